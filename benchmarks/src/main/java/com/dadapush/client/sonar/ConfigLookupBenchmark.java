@@ -0,0 +1,70 @@
+package com.dadapush.client.sonar;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Project configuration lookup: the compiled {@link ProjectConfigIndex} against the former linear scan
+ * over all configured keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigLookupBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int entries;
+
+  private Map<String, ProjectConfig> projectConfigMap;
+  private ProjectConfigIndex index;
+  private String[] projectKeys;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    ConfigSnapshot snapshot = ConfigSnapshot.refresh(Fixtures.settings(entries), ConfigSnapshot.EMPTY);
+    projectConfigMap = snapshot.getProjectConfigMap();
+    index = snapshot.getProjectConfigIndex();
+    projectKeys = new String[Math.min(entries, 1024)];
+    for (int i = 0; i < projectKeys.length; i++) {
+      projectKeys[i] = Fixtures.projectKey((int) ((long) i * entries / projectKeys.length));
+    }
+  }
+
+  private String nextProjectKey() {
+    String projectKey = projectKeys[next];
+    next = (next + 1) % projectKeys.length;
+    return projectKey;
+  }
+
+  @Benchmark
+  public ProjectConfig index() {
+    return index.find(nextProjectKey()).getConfig();
+  }
+
+  @Benchmark
+  public ProjectConfig linearScan() {
+    String projectKey = nextProjectKey();
+    return projectConfigMap.keySet()
+        .stream()
+        .filter(key -> key.endsWith("*") ? projectKey.startsWith(key.substring(0, key.length() - 1))
+            : key.equals(projectKey))
+        .map(projectConfigMap::get)
+        .findFirst()
+        .orElse(null);
+  }
+}
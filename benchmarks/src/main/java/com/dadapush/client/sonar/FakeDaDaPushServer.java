@@ -0,0 +1,244 @@
+package com.dadapush.client.sonar;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the DaDaPush API, point {@code dadapush.basePath} to {@link #getBasePath()}.
+ * <pre>
+ * POST /api/v1/message with header x-channel-token answers {"code":0,"errmsg":"","data":{"messageId":N}}
+ * unless one of the injected faults applies, in this order:
+ * 1) timeoutRate: the answer is delayed by timeoutMs, longer than the client read timeout
+ * 2) serverErrorRate: HTTP 503
+ * 3) errorCodeRate: HTTP 200 with code {@link #ERROR_CODE}
+ * </pre>
+ * Bodies with Content-Encoding gzip are decompressed, or rejected with HTTP 415 once gzip support is disabled.
+ * Every request is answered after latencyMs (plus up to jitterMs) and recorded.
+ */
+class FakeDaDaPushServer implements AutoCloseable {
+
+  static final String PATH = "/api/v1/message";
+  static final String TOKEN_HEADER = "x-channel-token";
+  static final int ERROR_CODE = 1;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final AtomicLong messageIds = new AtomicLong();
+  private final Queue<RecordedRequest> requests = new ConcurrentLinkedQueue<>();
+
+  private volatile long latencyMs;
+  private volatile long jitterMs;
+  private volatile double errorCodeRate;
+  private volatile double serverErrorRate;
+  private volatile double timeoutRate;
+  private volatile long timeoutMs = 30_000L;
+  private volatile boolean recording = true;
+  private volatile boolean gzip = true;
+  private volatile Consumer<RecordedRequest> listener = r -> {
+  };
+
+  FakeDaDaPushServer(int threads) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    executor = Executors.newFixedThreadPool(threads);
+    server.setExecutor(executor);
+    server.createContext(PATH, this::handle);
+    server.start();
+  }
+
+  String getBasePath() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  FakeDaDaPushServer latency(long latencyMs, long jitterMs) {
+    this.latencyMs = latencyMs;
+    this.jitterMs = jitterMs;
+    return this;
+  }
+
+  FakeDaDaPushServer errorCodeRate(double errorCodeRate) {
+    this.errorCodeRate = errorCodeRate;
+    return this;
+  }
+
+  FakeDaDaPushServer serverErrorRate(double serverErrorRate) {
+    this.serverErrorRate = serverErrorRate;
+    return this;
+  }
+
+  FakeDaDaPushServer timeouts(double timeoutRate, long timeoutMs) {
+    this.timeoutRate = timeoutRate;
+    this.timeoutMs = timeoutMs;
+    return this;
+  }
+
+  FakeDaDaPushServer gzip(boolean gzip) {
+    this.gzip = gzip;
+    return this;
+  }
+
+  /**
+   * Requests are kept in memory unless disabled, for long runs rely on the listener instead.
+   */
+  FakeDaDaPushServer recording(boolean recording) {
+    this.recording = recording;
+    return this;
+  }
+
+  FakeDaDaPushServer listener(Consumer<RecordedRequest> listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  List<RecordedRequest> getRequests() {
+    return new ArrayList<>(requests);
+  }
+
+  void clear() {
+    requests.clear();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, "");
+        return;
+      }
+      boolean gzipped = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+      byte[] bytes = readBody(exchange.getRequestBody());
+      if (gzipped && !gzip) {
+        respond(exchange, 415, "Unsupported Media Type");
+        return;
+      }
+      byte[] body = gzipped ? readBody(new GZIPInputStream(new ByteArrayInputStream(bytes))) : bytes;
+      RecordedRequest request = new RecordedRequest(System.nanoTime(),
+          exchange.getRequestHeaders().getFirst(TOKEN_HEADER), new String(body, StandardCharsets.UTF_8),
+          bytes.length, gzipped);
+      if (recording) {
+        requests.add(request);
+      }
+      listener.accept(request);
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      sleep(latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0L));
+      if (random.nextDouble() < timeoutRate) {
+        sleep(timeoutMs);
+      }
+      if (request.getChannelToken() == null) {
+        respond(exchange, 200, "{\"code\":" + ERROR_CODE + ",\"errmsg\":\"missing channel token\",\"data\":null}");
+      } else if (random.nextDouble() < serverErrorRate) {
+        respond(exchange, 503, "Service Unavailable");
+      } else if (random.nextDouble() < errorCodeRate) {
+        respond(exchange, 200, "{\"code\":" + ERROR_CODE + ",\"errmsg\":\"injected error\",\"data\":null}");
+      } else {
+        respond(exchange, 200, "{\"code\":0,\"errmsg\":\"\",\"data\":{\"messageId\":"
+            + messageIds.incrementAndGet() + "}}");
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static byte[] readBody(InputStream body) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    try (InputStream in = body) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static void sleep(long ms) {
+    if (ms <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static class RecordedRequest {
+
+    private final long receivedNanos;
+    private final String channelToken;
+    private final String body;
+    private final int wireBytes;
+    private final boolean gzipped;
+
+    private RecordedRequest(long receivedNanos, String channelToken, String body, int wireBytes,
+        boolean gzipped) {
+      this.receivedNanos = receivedNanos;
+      this.channelToken = channelToken;
+      this.body = body;
+      this.wireBytes = wireBytes;
+      this.gzipped = gzipped;
+    }
+
+    long getReceivedNanos() {
+      return receivedNanos;
+    }
+
+    String getChannelToken() {
+      return channelToken;
+    }
+
+    String getBody() {
+      return body;
+    }
+
+    /**
+     * @return size of the body as received, before decompression
+     */
+    int getWireBytes() {
+      return wireBytes;
+    }
+
+    boolean isGzipped() {
+      return gzipped;
+    }
+
+    @Override
+    public String toString() {
+      return "RecordedRequest{channelToken='" + channelToken + "', body=" + body + '}';
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.dadapush.client.sonar;
+
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import org.sonar.api.Plugin;
+import org.sonar.api.SonarQubeSide;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask.ProjectAnalysis;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.ce.posttask.QualityGate.EvaluationStatus;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.i18n.I18n;
+import org.sonar.api.internal.SonarRuntimeImpl;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.utils.Version;
+
+/**
+ * Synthetic settings, Quality Gates and analyses shared by the benchmarks and load tests.
+ * <pre>
+ * Project configuration i (0 based) uses
+ * - the exact key "org.example:project-i" if i is even
+ * - the wildcard key "org.example.group-i:*" if i is odd
+ * </pre>
+ */
+final class Fixtures {
+
+  private static final String[] METRIC_KEYS = {
+      CoreMetrics.NEW_COVERAGE_KEY,
+      CoreMetrics.NEW_DUPLICATED_LINES_DENSITY_KEY,
+      CoreMetrics.NEW_MAINTAINABILITY_RATING_KEY,
+      CoreMetrics.NEW_RELIABILITY_RATING_KEY,
+      CoreMetrics.NEW_SECURITY_RATING_KEY,
+      CoreMetrics.NEW_TECHNICAL_DEBT_KEY,
+      CoreMetrics.NEW_BUGS_KEY,
+      CoreMetrics.NEW_VULNERABILITIES_KEY,
+      CoreMetrics.NEW_SQALE_DEBT_RATIO_KEY,
+      CoreMetrics.COVERAGE_KEY
+  };
+
+  private Fixtures() {
+  }
+
+  /**
+   * @return settings with the defaults of all plugin properties
+   */
+  static MapSettings settings() {
+    return new MapSettings(definitions());
+  }
+
+  /**
+   * @return the definitions of all plugin properties
+   */
+  static PropertyDefinitions definitions() {
+    Plugin.Context context = new Plugin.Context(
+        SonarRuntimeImpl.forSonarQube(Version.create(7, 4), SonarQubeSide.COMPUTE_ENGINE));
+    new DaDaPushPlugin().define(context);
+    return new PropertyDefinitions(context.getExtensions());
+  }
+
+  /**
+   * @return enabled plugin settings with the given number of project configurations
+   */
+  static MapSettings settings(int projectConfigs) {
+    MapSettings settings = settings();
+    settings.setProperty(DaDaPushNotificationProp.ENABLED.property(), true);
+    StringBuilder indexes = new StringBuilder();
+    for (int i = 0; i < projectConfigs; i++) {
+      String prefix = DaDaPushNotificationProp.CONFIG.property() + "." + i + ".";
+      settings.setProperty(prefix + DaDaPushNotificationProp.PROJECT.property(), configuredKey(i));
+      settings.setProperty(prefix + DaDaPushNotificationProp.CHANNEL_TOKEN.property(), "token-" + i);
+      settings.setProperty(prefix + DaDaPushNotificationProp.QG_FAIL_ONLY.property(), i % 3 == 0);
+      indexes.append(i == 0 ? "" : ",").append(i);
+    }
+    settings.setProperty(DaDaPushNotificationProp.CONFIG.property(), indexes.toString());
+    return settings;
+  }
+
+  /**
+   * Adds routing rules to settings: rule i applies to the project of configuration i, every fourth one to
+   * pull requests only, every eighth one to all projects with a feature branch pattern.
+   */
+  static MapSettings routingRules(MapSettings settings, int rules) {
+    StringBuilder indexes = new StringBuilder();
+    for (int i = 0; i < rules; i++) {
+      String prefix = DaDaPushNotificationProp.ROUTING.property() + "." + i + ".";
+      if (i % 8 == 7) {
+        settings.setProperty(prefix + DaDaPushNotificationProp.ROUTE_BRANCH.property(), "feature/*");
+      } else {
+        settings.setProperty(prefix + DaDaPushNotificationProp.PROJECT.property(), configuredKey(i));
+      }
+      if (i % 4 == 3) {
+        settings.setProperty(prefix + DaDaPushNotificationProp.ROUTE_BRANCH_TYPE.property(),
+            BranchScope.PULL_REQUEST.name());
+      }
+      settings.setProperty(prefix + DaDaPushNotificationProp.ROUTE_STATUS.property(), i % 2 == 0 ? "ERROR" : "WARN,ERROR");
+      settings.setProperty(prefix + DaDaPushNotificationProp.CHANNEL_TOKEN.property(), "routed-" + i);
+      indexes.append(i == 0 ? "" : ",").append(i);
+    }
+    settings.setProperty(DaDaPushNotificationProp.ROUTING.property(), indexes.toString());
+    return settings;
+  }
+
+  static String configuredKey(int i) {
+    return i % 2 == 0 ? "org.example:project-" + i : "org.example.group-" + i + ":*";
+  }
+
+  /**
+   * @return a project key matching project configuration i
+   */
+  static String projectKey(int i) {
+    return i % 2 == 0 ? "org.example:project-" + i : "org.example.group-" + i + ":module-" + i;
+  }
+
+  static QualityGate qualityGate(int conditions, QualityGate.Status status) {
+    PostProjectAnalysisTaskTester.QualityGateBuilder builder = PostProjectAnalysisTaskTester
+        .newQualityGateBuilder()
+        .setId("1")
+        .setName("Sonar way")
+        .setStatus(status);
+    for (int i = 0; i < conditions; i++) {
+      EvaluationStatus evaluation = status == QualityGate.Status.ERROR && i % 2 == 0
+          ? EvaluationStatus.ERROR : EvaluationStatus.OK;
+      builder.add(PostProjectAnalysisTaskTester.newConditionBuilder()
+          .setMetricKey(METRIC_KEYS[i % METRIC_KEYS.length])
+          .setOperator(QualityGate.Operator.GREATER_THAN)
+          .setErrorThreshold("3")
+          .setWarningThreshold("2")
+          .setOnLeakPeriod(true)
+          .build(evaluation, Integer.toString(i % 5 + 1)));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Runs task with a synthetic analysis of projectKey.
+   */
+  static ProjectAnalysis analyze(PostProjectAnalysisTask task, String projectKey,
+      QualityGate qualityGate) {
+    return PostProjectAnalysisTaskTester.of(task)
+        .withCeTask(PostProjectAnalysisTaskTester.newCeTaskBuilder()
+            .setId("task-" + projectKey)
+            .setStatus(org.sonar.api.ce.posttask.CeTask.Status.SUCCESS)
+            .build())
+        .withProject(PostProjectAnalysisTaskTester.newProjectBuilder()
+            .setUuid("uuid-" + projectKey)
+            .setKey(projectKey)
+            .setName("Project " + projectKey)
+            .build())
+        .withQualityGate(qualityGate)
+        .withScannerContext(PostProjectAnalysisTaskTester.newScannerContextBuilder().build())
+        .at(new Date())
+        .execute();
+  }
+
+  /**
+   * @return a synthetic analysis of projectKey, without running any real task
+   */
+  static ProjectAnalysis analysis(String projectKey, QualityGate qualityGate) {
+    return analyze(analysis -> {
+    }, projectKey, qualityGate);
+  }
+
+  /**
+   * @return an I18n which returns the default value of every message
+   */
+  static I18n i18n() {
+    return (I18n) Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[] {I18n.class},
+        (proxy, method, args) -> "message".equals(method.getName()) ? args[2] : null);
+  }
+}
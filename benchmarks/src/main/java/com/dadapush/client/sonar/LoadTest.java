@@ -0,0 +1,139 @@
+package com.dadapush.client.sonar;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.internal.MapSettings;
+
+/**
+ * Fires simulated analyses through {@link DaDaPushPostProjectAnalysisTask#finished} against a
+ * {@link FakeDaDaPushServer} and reports latency and throughput. Configured with system properties:
+ * <pre>
+ * analyses     number of simulated analyses (5000)
+ * concurrency  threads calling finished() at the same time (16)
+ * projects     number of configured projects (100)
+ * conditions   Quality Gate conditions per analysis (10)
+ * workers      dadapush.delivery.workers (4)
+ * queue        dadapush.delivery.queueCapacity (1000)
+ * latency      server latency in ms (20), jitter in ms (10)
+ * errorRate    share of answers with a non zero code (0)
+ * serverErrorRate share of HTTP 503 answers (0)
+ * timeoutRate  share of requests answered after the read timeout (0)
+ * readTimeout  dadapush.http.readTimeoutMs (2000)
+ * channels     channel tokens per project, all sharing the serialized body (1)
+ * gzip         dadapush.http.gzip (false)
+ * serverGzip   whether the server accepts compressed bodies, HTTP 415 otherwise (true)
+ * </pre>
+ * Example: {@code java -cp benchmarks.jar -Danalyses=20000 -Dworkers=8 com.dadapush.client.sonar.LoadTest}
+ */
+public class LoadTest {
+
+  private static final Pattern ANALYSIS_ID = Pattern.compile(":load-(\\d+)");
+
+  public static void main(String[] args) throws Exception {
+    int analyses = Integer.getInteger("analyses", 5000);
+    int concurrency = Integer.getInteger("concurrency", 16);
+    int projects = Math.max(2, Integer.getInteger("projects", 100));
+    int conditions = Integer.getInteger("conditions", 10);
+    int readTimeout = Integer.getInteger("readTimeout", 2000);
+    int channels = Math.max(1, Integer.getInteger("channels", 1));
+
+    LatencyHistogram finishedLatency = new LatencyHistogram();
+    LatencyHistogram endToEndLatency = new LatencyHistogram();
+    long[] submittedAt = new long[analyses];
+    Map<Integer, Boolean> received = new ConcurrentHashMap<>();
+
+    try (FakeDaDaPushServer server = new FakeDaDaPushServer(64)) {
+      server.latency(Long.getLong("latency", 20L), Long.getLong("jitter", 10L))
+          .errorCodeRate(Double.parseDouble(System.getProperty("errorRate", "0")))
+          .serverErrorRate(Double.parseDouble(System.getProperty("serverErrorRate", "0")))
+          .timeouts(Double.parseDouble(System.getProperty("timeoutRate", "0")), readTimeout * 2L)
+          .gzip(Boolean.parseBoolean(System.getProperty("serverGzip", "true")))
+          .recording(false)
+          .listener(request -> {
+            Matcher matcher = ANALYSIS_ID.matcher(request.getBody());
+            // retries of the same analysis only count once
+            if (matcher.find() && received.putIfAbsent(Integer.parseInt(matcher.group(1)), Boolean.TRUE) == null) {
+              endToEndLatency.record(request.getReceivedNanos() - submittedAt[Integer.parseInt(matcher.group(1))]);
+            }
+          });
+
+      MapSettings settings = Fixtures.settings(projects);
+      settings.setProperty(DaDaPushNotificationProp.BASE_PATH.property(), server.getBasePath());
+      settings.setProperty(DaDaPushNotificationProp.DELIVERY_WORKERS.property(), Integer.getInteger("workers", 4));
+      settings.setProperty(DaDaPushNotificationProp.DELIVERY_QUEUE_CAPACITY.property(), Integer.getInteger("queue", 1000));
+      settings.setProperty(DaDaPushNotificationProp.HTTP_READ_TIMEOUT.property(), readTimeout);
+      settings.setProperty(DaDaPushNotificationProp.OUTBOX_ENABLED.property(), false);
+      settings.setProperty(DaDaPushNotificationProp.HTTP_GZIP.property(), Boolean.getBoolean("gzip"));
+      for (int i = 0; i < projects; i++) {
+        StringBuilder tokens = new StringBuilder("token-" + i);
+        for (int c = 1; c < channels; c++) {
+          tokens.append(",token-").append(i).append('-').append(c);
+        }
+        settings.setProperty(DaDaPushNotificationProp.CONFIG.property() + "." + i + "."
+            + DaDaPushNotificationProp.CHANNEL_TOKEN.property(), tokens.toString());
+      }
+
+      MetricCache metricCache = new MetricCache(Fixtures.i18n());
+      NotificationStats stats = new NotificationStats(metricCache);
+      ApiClientHolder apiClientHolder = new ApiClientHolder(settings);
+      NotificationDispatcher dispatcher = new NotificationDispatcher(settings, apiClientHolder, stats);
+      DaDaPushPostProjectAnalysisTask task = new DaDaPushPostProjectAnalysisTask(settings, metricCache,
+          dispatcher, stats, new ProjectStateStore(settings));
+      metricCache.start();
+      apiClientHolder.start();
+      dispatcher.start();
+
+      QualityGate qualityGate = Fixtures.qualityGate(conditions, QualityGate.Status.ERROR);
+      ExecutorService callers = Executors.newFixedThreadPool(concurrency);
+      AtomicInteger next = new AtomicInteger();
+      long start = System.nanoTime();
+      for (int t = 0; t < concurrency; t++) {
+        callers.execute(() -> {
+          for (int i = next.getAndIncrement(); i < analyses; i = next.getAndIncrement()) {
+            // odd project configurations are wildcards "org.example.group-i:*"
+            int project = (i % (projects / 2)) * 2 + 1;
+            String projectKey = "org.example.group-" + project + ":load-" + i;
+            submittedAt[i] = System.nanoTime();
+            Fixtures.analyze(task, projectKey, qualityGate);
+            finishedLatency.recordSince(submittedAt[i]);
+          }
+        });
+      }
+      callers.shutdown();
+      callers.awaitTermination(1, TimeUnit.HOURS);
+      long submitted = System.nanoTime() - start;
+
+      long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+      while (done(stats) < (long) analyses * channels && System.nanoTime() < deadline) {
+        Thread.sleep(50L);
+      }
+      long elapsed = System.nanoTime() - start;
+      dispatcher.stop();
+      apiClientHolder.stop();
+
+      System.out.printf("analyses:     %d with %d caller thread(s)%n", analyses, concurrency);
+      System.out.printf("finished():   %s%n", finishedLatency);
+      System.out.printf("end to end:   %s%n", endToEndLatency);
+      System.out.printf("http:         %s%n", stats.httpLatency());
+      System.out.printf("submitted in: %.1f ms, %.0f analyses/s%n", submitted / 1e6, analyses / (submitted / 1e9));
+      System.out.printf("delivered in: %.1f ms, %.0f messages/s%n", elapsed / 1e6, stats.getSent() / (elapsed / 1e9));
+      System.out.printf("serialized:   %d, reused %d times, saving %.1f ms (%s)%n", stats.getSerializations(),
+          stats.getSerializationsSaved(), stats.getSerializationSavedMillis(), stats.serializeLatency());
+      System.out.printf("bytes:        %d on the wire for %d of JSON (%.0f%%)%n", stats.getWireBytes(),
+          stats.getPayloadBytes(), stats.getPayloadBytes() == 0 ? 0d
+              : 100d * stats.getWireBytes() / stats.getPayloadBytes());
+      System.out.printf("stats:        %s%n", stats.getSummary());
+    }
+  }
+
+  private static long done(NotificationStats stats) {
+    return stats.getSent() + stats.getFailed() + stats.getGivenUp() + stats.getDropped();
+  }
+}
@@ -0,0 +1,61 @@
+package com.dadapush.client.sonar;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask.ProjectAnalysis;
+import org.sonar.api.ce.posttask.QualityGate;
+
+/**
+ * Rendering of title and content for a failed Quality Gate. Run with {@code -prof gc} to see the allocation
+ * rate per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+  @Param({"5", "20", "100"})
+  int conditions;
+
+  @Param({"true", "false"})
+  boolean qgFailOnly;
+
+  private MessageRenderer renderer;
+  private MessageTemplate template;
+  private ProjectAnalysis analysis;
+  private ProjectConfig projectConfig;
+
+  @Setup
+  public void setUp() {
+    MetricCache metricCache = new MetricCache(Fixtures.i18n());
+    metricCache.start();
+    renderer = new MessageRenderer(metricCache);
+    template = MessageTemplate.compile(MessageTemplate.DEFAULT);
+    analysis = Fixtures.analysis("org.example:project-0",
+        Fixtures.qualityGate(conditions, QualityGate.Status.ERROR));
+    projectConfig = new ProjectConfig("org.example:project-0", "token-0", qgFailOnly);
+  }
+
+  @Benchmark
+  public String title() {
+    return renderer.renderTitle(analysis.getQualityGate());
+  }
+
+  @Benchmark
+  public String content() {
+    return renderer.renderContent(template, analysis, projectConfig, "https://sonar.example.org");
+  }
+}
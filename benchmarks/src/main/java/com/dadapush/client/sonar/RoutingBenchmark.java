@@ -0,0 +1,83 @@
+package com.dadapush.client.sonar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.internal.MapSettings;
+
+/**
+ * Routing rule evaluation: the compiled {@link RoutingRules} against checking every rule in order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  int rules;
+
+  private RoutingRules routingRules;
+  private List<RoutingRule> ruleList;
+  private String[] projectKeys;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    MapSettings settings = Fixtures.routingRules(Fixtures.settings(rules), rules);
+    routingRules = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY).getRoutingRules();
+    ruleList = new ArrayList<>(rules);
+    String[] ruleIds = settings.getStringArray(DaDaPushNotificationProp.ROUTING.property());
+    for (int i = 0; i < ruleIds.length; i++) {
+      ruleList.add(RoutingRule.fromRawValues(i, RoutingRule.readRawValues(settings, ruleIds[i])));
+    }
+    projectKeys = new String[Math.min(rules, 1024)];
+    for (int i = 0; i < projectKeys.length; i++) {
+      projectKeys[i] = Fixtures.projectKey((int) ((long) i * rules / projectKeys.length));
+    }
+  }
+
+  private String nextProjectKey() {
+    String projectKey = projectKeys[next];
+    next = (next + 1) % projectKeys.length;
+    return projectKey;
+  }
+
+  @Benchmark
+  public RoutingRule compiled() {
+    return routingRules.find(nextProjectKey(), BranchScope.BRANCH, "feature/login", QualityGate.Status.WARN,
+        Collections::emptyMap);
+  }
+
+  @Benchmark
+  public RoutingRule linearScan() {
+    String projectKey = nextProjectKey();
+    Map<String, String> scannerProperties = Collections.emptyMap();
+    for (RoutingRule rule : ruleList) {
+      String key = rule.getProjectKey();
+      boolean projectMatches = key == null
+          || (key.endsWith("*") ? projectKey.startsWith(key.substring(0, key.length() - 1)) : key.equals(projectKey));
+      if (projectMatches && rule.getBranchScope().includes(BranchScope.BRANCH)
+          && rule.acceptsStatus(QualityGate.Status.WARN) && rule.matchesDetails("feature/login", scannerProperties)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,53 @@
+package com.dadapush.client.sonar;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.config.internal.MapSettings;
+
+/**
+ * Settings refresh done at the start of every {@code finished()} call.
+ * <pre>
+ * unchanged: settings equal to the previous snapshot, the common case
+ * rebuild: every project configuration is parsed and indexed again
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettingsRefreshBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  int entries;
+
+  private MapSettings settings;
+  private ConfigSnapshot snapshot;
+
+  @Setup
+  public void setUp() {
+    settings = Fixtures.settings(entries);
+    snapshot = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+  }
+
+  @Benchmark
+  public ConfigSnapshot unchanged() {
+    return ConfigSnapshot.refresh(settings, snapshot);
+  }
+
+  @Benchmark
+  public ConfigSnapshot rebuild() {
+    return ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+  }
+}
@@ -1,16 +1,14 @@
 package com.dadapush.client.sonar;
 
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.sonar.api.ce.posttask.Branch;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask.ProjectAnalysis;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Settings;
-import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
@@ -19,7 +17,7 @@ public abstract class AbstractComponent {
     private static final Logger LOG = Loggers.get(AbstractComponent.class);
 
     private final Settings settings;
-    private Map<String, ProjectConfig> projectConfigMap = Collections.emptyMap();
+    private final AtomicReference<ConfigSnapshot> configSnapshot = new AtomicReference<>(ConfigSnapshot.EMPTY);
 
     public AbstractComponent(Settings settings) {
         this.settings = settings;
@@ -32,22 +30,33 @@ public abstract class AbstractComponent {
      * 1) the Settings object is constructor injected to this class.
      * 2) the values reflected by the Settings object reflect latest settings configured
      * 3) but the constructor of this class is called only once, and after that the class is never instantiated again (the same instance is reused)
-     * 4) thus when the instance is used to perform something, we must refresh the projectConfigMap when the execution starts
+     * 4) thus when the instance is used to perform something, we must refresh the project configs when the execution starts
+     * 5) several Compute Engine workers may execute at once, so each one uses the snapshot returned here for its
+     *    whole execution, and a new snapshot is only published by compare-and-set against the one it was built from
      * </pre>
+     * The refresh is cheap when nothing changed, see {@link ConfigSnapshot}.
+     *
+     * @return the snapshot to use for this execution
      */
-    protected void refreshSettings() {
+    protected ConfigSnapshot refreshSettings() {
         LOG.info("Refreshing settings");
-        refreshProjectConfigs();
+        return refreshProjectConfigs();
     }
 
-    private void refreshProjectConfigs() {
-        LOG.info("Refreshing project configs");
-        Set<ProjectConfig> oldValues = new HashSet<>();
-        this.projectConfigMap.values().forEach(c -> oldValues.add(new ProjectConfig(c)));
-        this.projectConfigMap = buildProjectConfigByProjectKeyMap(settings);
-        Set<ProjectConfig> newValues = new HashSet<>(this.projectConfigMap.values());
-        if (!oldValues.equals(newValues)) {
-            LOG.info("Old configs [{}] --> new configs [{}]", oldValues, newValues);
+    private ConfigSnapshot refreshProjectConfigs() {
+        while (true) {
+            ConfigSnapshot oldSnapshot = this.configSnapshot.get();
+            ConfigSnapshot newSnapshot = ConfigSnapshot.refresh(settings, oldSnapshot);
+            if (newSnapshot == oldSnapshot) {
+                LOG.debug("Project configs unchanged ({})", oldSnapshot.getVersion());
+                return oldSnapshot;
+            }
+            if (this.configSnapshot.compareAndSet(oldSnapshot, newSnapshot)) {
+                LOG.info("Project configs changed ({} --> {}), removed [{}], added [{}]", oldSnapshot.getVersion(),
+                        newSnapshot.getVersion(), oldSnapshot.differenceFrom(newSnapshot), newSnapshot.differenceFrom(oldSnapshot));
+                return newSnapshot;
+            }
+            // another execution published a snapshot meanwhile, refresh against that one, so versions stay ordered
         }
     }
 
@@ -75,41 +84,33 @@ public abstract class AbstractComponent {
         return u + "/";
     }
 
-    protected Optional<ProjectConfig> getProjectConfig(String projectKey) {
-        List<ProjectConfig> projectConfigs = projectConfigMap.keySet()
-                .stream()
-                .filter(key -> key.endsWith("*") ? projectKey.startsWith(key.substring(0, key.length() - 1))
-                        : key.equals(projectKey))
-                .map(projectConfigMap::get)
-                .collect(Collectors.toList());
+    protected Optional<ProjectConfig> getProjectConfig(ConfigSnapshot snapshot, String projectKey) {
+        ProjectConfigIndex.Match match = snapshot.getProjectConfigIndex().find(projectKey);
         // Not configured at all
-        if (projectConfigs.isEmpty()) {
-            LOG.info("Could not find config for project [{}] in [{}]", projectKey, projectConfigMap);
+        if (match.getConfig() == null) {
+            LOG.info("Could not find config for project [{}] in {}", projectKey, snapshot);
             return Optional.empty();
         }
 
-        if(projectConfigs.size() > 1) {
-            LOG.warn("More than 1 project key was matched. Using first one: {}", projectConfigs.get(0).getProjectKey());
+        if (match.getCandidates() > 1) {
+            LOG.warn("More than 1 project key was matched. Using most specific one: {}", match.getConfig().getProjectKey());
         }
-        return Optional.of(projectConfigs.get(0));
+        return Optional.of(match.getConfig());
     }
 
-    private static Map<String, ProjectConfig> buildProjectConfigByProjectKeyMap(Settings settings) {
-        Map<String, ProjectConfig> map = new HashMap<>();
-        String[] projectConfigIndexes = settings.getStringArray(DaDaPushNotificationProp.CONFIG.property());
-        LOG.info("DaDaPushNotificationProp.CONFIG=[{}]", projectConfigIndexes);
-        for (String projectConfigIndex : projectConfigIndexes) {
-            String projectKeyProperty = DaDaPushNotificationProp.CONFIG.property() + "." + projectConfigIndex + "." + DaDaPushNotificationProp.PROJECT.property();
-            String projectKey = settings.getString(projectKeyProperty);
-            if (projectKey == null) {
-                throw MessageException.of("DaDaPush Notification configuration is corrupted. At least one project specific parameter has no project key. " +
-                        "Contact your administrator to update this configuration in the global administration section of SonarQube.");
-            }
-            ProjectConfig value = ProjectConfig.create(settings, projectConfigIndex);
-            LOG.info("Found project configuration [{}]", value);
-            map.put(projectKey, value);
+    /**
+     * @return the first routing rule matching the analysis, empty if none does
+     */
+    protected Optional<RoutingRule> getRoutingRule(ConfigSnapshot snapshot, ProjectAnalysis analysis) {
+        RoutingRules routingRules = snapshot.getRoutingRules();
+        if (routingRules.isEmpty()) {
+            return Optional.empty();
         }
-        return map;
+        Optional<Branch> branch = analysis.getBranch();
+        QualityGate qualityGate = analysis.getQualityGate();
+        return Optional.ofNullable(routingRules.find(analysis.getProject().getKey(), BranchScope.of(branch),
+                branch.flatMap(Branch::getName).orElse(null), qualityGate == null ? null : qualityGate.getStatus(),
+                () -> analysis.getScannerContext().getProperties()));
     }
 
     protected String logRelevantSettings() {
@@ -117,24 +118,39 @@ public abstract class AbstractComponent {
         mapSetting(pluginSettings, DaDaPushNotificationProp.BASE_PATH);
         mapSetting(pluginSettings, DaDaPushNotificationProp.ENABLED);
         mapSetting(pluginSettings, DaDaPushNotificationProp.CONFIG);
-        return pluginSettings.toString() + "; project specific channel config: " + projectConfigMap;
+        return pluginSettings.toString() + "; project specific channel config: " + configSnapshot.get();
     }
 
     private void mapSetting(Map<String, String> pluginSettings, DaDaPushNotificationProp key) {
         pluginSettings.put(key.name(), settings.getString(key.property()));
     }
 
-    protected boolean shouldSkipSendingNotification(ProjectConfig projectConfig, QualityGate qualityGate) {
+    /**
+     * @return why no notification should be sent, empty if it should be sent
+     */
+    protected Optional<SkipReason> getSkipReason(ProjectConfig projectConfig, QualityGate qualityGate) {
+        return getSkipReason(projectConfig, projectConfig.getChannels(), qualityGate);
+    }
+
+    /**
+     * @param channels the channels to notify, those of projectConfig or of a {@link RoutingRule}
+     * @return why no notification should be sent, empty if it should be sent
+     */
+    protected Optional<SkipReason> getSkipReason(ProjectConfig projectConfig, List<Channel> channels, QualityGate qualityGate) {
         // Disabled due to missing channel value
-        if (projectConfig.getChannelToken() == null ||
-                "".equals(projectConfig.getChannelToken().trim())) {
+        if (channels.isEmpty()) {
             LOG.info("DaDaPush Notification for project [{}] is blank, notifications disabled", projectConfig.getProjectKey());
-            return true;
+            return Optional.of(SkipReason.BLANK_TOKEN);
         }
         if (projectConfig.isQgFailOnly() && qualityGate != null && QualityGate.Status.OK.equals(qualityGate.getStatus())) {
             LOG.info("Project [{}] set up to send notification on failed Quality Gate, but was: {}", projectConfig.getProjectKey(), qualityGate.getStatus().name());
-            return true;
+            return Optional.of(SkipReason.QG_FAIL_ONLY);
+        }
+        QualityGate.Status status = qualityGate == null ? null : qualityGate.getStatus();
+        if (channels.stream().noneMatch(channel -> channel.accepts(status))) {
+            LOG.info("No channel of project [{}] is notified about Quality Gate status {}", projectConfig.getProjectKey(), status);
+            return Optional.of(SkipReason.CHANNEL_FILTER);
         }
-        return false;
+        return Optional.empty();
     }
 }
@@ -0,0 +1,146 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.ApiClient;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.apache.commons.lang3.StringUtils;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Owns the DaDaPush API client used by all delivery threads.
+ * <pre>
+ * 1) the generated {@link ApiClient} is not safe to reconfigure while other threads use it
+ * 2) so instead of calling setBasePath on a shared client, a new client is built whenever the base path or a timeout changes
+ * 3) all clients share one connection pool, so warm keep-alive connections survive such a rebuild
+ * </pre>
+ * The plugin does not use {@code Configuration.getDefaultApiClient()}, which is a process wide singleton.
+ */
+@ComputeEngineSide
+@SuppressWarnings("deprecation")
+public class ApiClientHolder implements Startable {
+
+  private static final Logger LOG = Loggers.get(ApiClientHolder.class);
+
+  private static final int MAX_IDLE_CONNECTIONS = 5;
+  private static final long KEEP_ALIVE_MINUTES = 5L;
+
+  private final Settings settings;
+  private final ConnectionPool connectionPool =
+      new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+
+  private volatile Client client;
+
+  public ApiClientHolder(Settings settings) {
+    this.settings = settings;
+  }
+
+  @Override
+  public void start() {
+    // clients are built on first use
+  }
+
+  @Override
+  public void stop() {
+    release();
+  }
+
+  /**
+   * Drops the client and closes idle connections, the next {@link #get(String)} builds a new client.
+   */
+  public void release() {
+    client = null;
+    connectionPool.evictAll();
+  }
+
+  /**
+   * @return a client bound to basePath with the currently configured timeouts
+   */
+  public ApiClient get(String basePath) {
+    ClientKey key = new ClientKey(basePath,
+        settings.getInt(DaDaPushNotificationProp.HTTP_CONNECT_TIMEOUT.property()),
+        settings.getInt(DaDaPushNotificationProp.HTTP_READ_TIMEOUT.property()),
+        settings.getInt(DaDaPushNotificationProp.HTTP_WRITE_TIMEOUT.property()));
+    Client current = client;
+    if (current != null && current.key.equals(key)) {
+      return current.apiClient;
+    }
+    synchronized (this) {
+      current = client;
+      if (current == null || !current.key.equals(key)) {
+        LOG.info("Building DaDaPush client for {}", key);
+        current = new Client(key, build(key));
+        client = current;
+      }
+      return current.apiClient;
+    }
+  }
+
+  private ApiClient build(ClientKey key) {
+    ApiClient apiClient = new ApiClient();
+    if (StringUtils.isNotEmpty(key.basePath)) {
+      apiClient.setBasePath(key.basePath);
+    }
+    OkHttpClient httpClient = apiClient.getHttpClient().newBuilder()
+        .connectionPool(connectionPool)
+        .connectTimeout(key.connectTimeout, TimeUnit.MILLISECONDS)
+        .readTimeout(key.readTimeout, TimeUnit.MILLISECONDS)
+        .writeTimeout(key.writeTimeout, TimeUnit.MILLISECONDS)
+        .build();
+    apiClient.setHttpClient(httpClient);
+    return apiClient;
+  }
+
+  private static class Client {
+
+    private final ClientKey key;
+    private final ApiClient apiClient;
+
+    private Client(ClientKey key, ApiClient apiClient) {
+      this.key = key;
+      this.apiClient = apiClient;
+    }
+  }
+
+  private static class ClientKey {
+
+    private final String basePath;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int writeTimeout;
+
+    private ClientKey(String basePath, int connectTimeout, int readTimeout, int writeTimeout) {
+      this.basePath = basePath;
+      this.connectTimeout = connectTimeout;
+      this.readTimeout = readTimeout;
+      this.writeTimeout = writeTimeout;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      ClientKey that = (ClientKey) o;
+      return connectTimeout == that.connectTimeout &&
+          readTimeout == that.readTimeout &&
+          writeTimeout == that.writeTimeout &&
+          Objects.equals(basePath, that.basePath);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(basePath, connectTimeout, readTimeout, writeTimeout);
+    }
+
+    @Override
+    public String toString() {
+      return basePath + " (connect " + connectTimeout + " ms, read " + readTimeout + " ms, write "
+          + writeTimeout + " ms)";
+    }
+  }
+}
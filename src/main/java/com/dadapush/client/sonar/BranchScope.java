@@ -0,0 +1,52 @@
+package com.dadapush.client.sonar;
+
+import java.util.Optional;
+import org.sonar.api.ce.posttask.Branch;
+
+/**
+ * Which analyses a {@link RoutingRule} applies to, depending on the analyzed branch.
+ */
+public enum BranchScope {
+
+  /**
+   * Every analysis.
+   */
+  ANY,
+  /**
+   * Analyses of the main branch, and of projects without branch support.
+   */
+  MAIN,
+  /**
+   * Analyses of any other branch, except pull requests.
+   */
+  BRANCH,
+  /**
+   * Analyses of pull requests.
+   */
+  PULL_REQUEST;
+
+  static BranchScope parse(String value) {
+    if (value != null) {
+      for (BranchScope scope : values()) {
+        if (scope.name().equalsIgnoreCase(value.trim())) {
+          return scope;
+        }
+      }
+    }
+    return ANY;
+  }
+
+  /**
+   * @return the scope of an analysis of branch, never {@link #ANY}
+   */
+  static BranchScope of(Optional<Branch> branch) {
+    if (!branch.isPresent() || branch.get().isMain()) {
+      return MAIN;
+    }
+    return branch.get().getType() == Branch.Type.PULL_REQUEST ? PULL_REQUEST : BRANCH;
+  }
+
+  boolean includes(BranchScope scope) {
+    return this == ANY || this == scope;
+  }
+}
@@ -0,0 +1,105 @@
+package com.dadapush.client.sonar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.sonar.api.ce.posttask.QualityGate;
+
+/**
+ * One DaDaPush channel a project notifies, parsed from the channel token field of a project configuration.
+ * <pre>
+ * The field holds a comma separated list of channel tokens, each optionally followed by ':' and a minimum
+ * Quality Gate status:
+ *   teamToken                     every notification
+ *   onCallToken:ERROR             only failed Quality Gates
+ *   teamToken, onCallToken:ERROR  both of the above
+ * </pre>
+ */
+public class Channel {
+
+  private final String token;
+  private final QualityGate.Status minimumStatus;
+
+  public Channel(String token, QualityGate.Status minimumStatus) {
+    this.token = token;
+    this.minimumStatus = minimumStatus;
+  }
+
+  /**
+   * @return the channels in value, empty if value is blank. A token listed more than once is notified once, with the
+   * least restrictive of its statuses
+   */
+  static List<Channel> parseList(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<String, Channel> channels = new LinkedHashMap<>(4);
+    for (String part : value.split(",")) {
+      String entry = part.trim();
+      if (!entry.isEmpty()) {
+        Channel channel = parse(entry);
+        channels.merge(channel.token, channel, Channel::leastRestrictive);
+      }
+    }
+    return Collections.unmodifiableList(new ArrayList<>(channels.values()));
+  }
+
+  private static Channel leastRestrictive(Channel a, Channel b) {
+    if (a.minimumStatus == null || b.minimumStatus == null) {
+      return a.minimumStatus == null ? a : b;
+    }
+    return a.minimumStatus.ordinal() <= b.minimumStatus.ordinal() ? a : b;
+  }
+
+  private static Channel parse(String entry) {
+    int separator = entry.lastIndexOf(':');
+    if (separator > 0) {
+      String filter = entry.substring(separator + 1).trim();
+      for (QualityGate.Status status : QualityGate.Status.values()) {
+        if (status.name().equalsIgnoreCase(filter)) {
+          return new Channel(entry.substring(0, separator).trim(), status);
+        }
+      }
+    }
+    return new Channel(entry, null);
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  /**
+   * @return the least severe Quality Gate status this channel is notified about, null for all
+   */
+  public QualityGate.Status getMinimumStatus() {
+    return minimumStatus;
+  }
+
+  /**
+   * @param status Quality Gate status of the analysis, null if unknown
+   */
+  boolean accepts(QualityGate.Status status) {
+    return minimumStatus == null || status == null || status.ordinal() >= minimumStatus.ordinal();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    Channel channel = (Channel) o;
+    return Objects.equals(token, channel.token) && minimumStatus == channel.minimumStatus;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(token, minimumStatus);
+  }
+
+  @Override
+  public String toString() {
+    return minimumStatus == null ? token : token + ':' + minimumStatus;
+  }
+}
@@ -0,0 +1,76 @@
+package com.dadapush.client.sonar;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Stops calling an endpoint that keeps failing.
+ * <pre>
+ * 1) CLOSED: requests pass, consecutive retryable failures are counted
+ * 2) OPEN: after failureThreshold consecutive failures requests fail fast for openDurationMs
+ * 3) HALF_OPEN: after that a single probe request is let through, its result closes or re-opens the breaker
+ * </pre>
+ */
+class CircuitBreaker {
+
+  private static final Logger LOG = Loggers.get(CircuitBreaker.class);
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openUntil;
+
+  CircuitBreaker(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return 0 if a request may be sent now, otherwise how long to wait before asking again
+   */
+  synchronized long acquire(long now, long openDurationMs) {
+    switch (state) {
+      case OPEN:
+        if (now < openUntil) {
+          return openUntil - now;
+        }
+        LOG.info("Circuit breaker for [{}] half-open, sending probe", name);
+        state = State.HALF_OPEN;
+        return 0L;
+      case HALF_OPEN:
+        // a probe is in flight
+        return Math.max(1L, openDurationMs / 10);
+      case CLOSED:
+      default:
+        return 0L;
+    }
+  }
+
+  synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOG.info("Circuit breaker for [{}] closed", name);
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  synchronized void onFailure(long now, int failureThreshold, long openDurationMs) {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      if (state != State.OPEN) {
+        LOG.warn("Circuit breaker for [{}] open for {} ms after {} consecutive failure(s)", name,
+            openDurationMs, consecutiveFailures);
+      }
+      state = State.OPEN;
+      openUntil = now + openDurationMs;
+    }
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+}
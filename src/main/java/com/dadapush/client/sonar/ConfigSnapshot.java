@@ -0,0 +1,259 @@
+package com.dadapush.client.sonar;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Immutable, versioned view of the project specific configuration, the routing rules and the global settings used
+ * to build a notification, so that one analysis sees a single consistent configuration.
+ * <pre>
+ * 1) the raw values of all dadapush.projectconfig and dadapush.routing entries and of the global settings are kept
+ *    as a fingerprint
+ * 2) {@link #refresh(Settings, ConfigSnapshot)} only reads these raw values, and rebuilds the snapshot only if they differ
+ * 3) when rebuilding, unchanged {@link ProjectConfig} instances are carried over from the previous snapshot, and the
+ *    {@link ProjectConfigIndex} if no project configuration changed
+ * 4) {@link RoutingRules} are compiled only when the routing rules changed, the default {@link MessageTemplate} only
+ *    when its source changed
+ * </pre>
+ */
+@SuppressWarnings("deprecation")
+final class ConfigSnapshot {
+
+    private static final Logger LOG = Loggers.get(ConfigSnapshot.class);
+
+    private static final String SERVER_BASE_URL_PROPERTY = "sonar.core.serverBaseURL";
+
+    /**
+     * Default of {@link DaDaPushNotificationProp#DEDUP_TTL}.
+     */
+    static final long DEFAULT_DEDUP_TTL = 3_600_000L;
+
+    private static final int BASE_PATH = 0;
+    private static final int TEMPLATE = 1;
+    private static final int DEDUP_MODE = 2;
+    private static final int DEDUP_TTL = 3;
+    private static final int PUSH_MINIMUM = 4;
+    private static final int PRIORITY_METRICS = 5;
+    private static final int DELTA_ENABLED = 6;
+    private static final int SERVER_URL = 7;
+    private static final int GLOBAL_FIELDS = 8;
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(0L, new String[0][], ProjectConfigIndex.EMPTY,
+            Collections.emptyMap(), new String[0][], RoutingRules.EMPTY, new String[GLOBAL_FIELDS], null);
+
+    private final long version;
+    private final String[][] fingerprint;
+    private final Map<String, ProjectConfig> projectConfigMap;
+    private final ProjectConfigIndex projectConfigIndex;
+    private final String[][] routingFingerprint;
+    private final RoutingRules routingRules;
+    private final String[] globalFingerprint;
+    private final MessageTemplate defaultTemplate;
+    private final DedupMode dedupMode;
+    private final long dedupTtl;
+    private final Priority pushMinimum;
+    private final List<String> priorityMetrics;
+
+    private ConfigSnapshot(long version, String[][] fingerprint, ProjectConfigIndex projectConfigIndex,
+            Map<String, ProjectConfig> projectConfigMap, String[][] routingFingerprint, RoutingRules routingRules,
+            String[] globalFingerprint, MessageTemplate previousTemplate) {
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.projectConfigMap = Collections.unmodifiableMap(projectConfigMap);
+        this.projectConfigIndex = projectConfigIndex;
+        this.routingFingerprint = routingFingerprint;
+        this.routingRules = routingRules;
+        this.globalFingerprint = globalFingerprint;
+        String templateSource = StringUtils.defaultIfBlank(globalFingerprint[TEMPLATE], MessageTemplate.DEFAULT);
+        this.defaultTemplate = previousTemplate != null && previousTemplate.getSource().equals(templateSource)
+                ? previousTemplate : MessageTemplate.compile(templateSource);
+        this.dedupMode = DedupMode.parse(globalFingerprint[DEDUP_MODE]);
+        this.dedupTtl = parseDedupTtl(globalFingerprint[DEDUP_TTL]);
+        this.pushMinimum = Priority.parse(globalFingerprint[PUSH_MINIMUM], Priority.LOW);
+        this.priorityMetrics = globalFingerprint[PRIORITY_METRICS] == null ? Collections.emptyList()
+                : Collections.unmodifiableList(Arrays.stream(globalFingerprint[PRIORITY_METRICS].split(","))
+                        .map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the TTL in ms, {@link #DEFAULT_DEDUP_TTL} if value is not a number, so that a bad setting does not stop
+     * all notifications
+     */
+    private static long parseDedupTtl(String value) {
+        if (StringUtils.isBlank(value)) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid {}=[{}], using {}", DaDaPushNotificationProp.DEDUP_TTL.property(), value,
+                    DEFAULT_DEDUP_TTL);
+            return DEFAULT_DEDUP_TTL;
+        }
+    }
+
+    /**
+     * Reads the unparsed values of the global settings kept in the snapshot, used to detect changes.
+     */
+    private static String[] readGlobalRawValues(Settings settings) {
+        String[] values = new String[GLOBAL_FIELDS];
+        values[BASE_PATH] = settings.getString(DaDaPushNotificationProp.BASE_PATH.property());
+        values[TEMPLATE] = settings.getString(DaDaPushNotificationProp.TEMPLATE.property());
+        values[DEDUP_MODE] = settings.getString(DaDaPushNotificationProp.DEDUP_MODE.property());
+        values[DEDUP_TTL] = settings.getString(DaDaPushNotificationProp.DEDUP_TTL.property());
+        values[PUSH_MINIMUM] = settings.getString(DaDaPushNotificationProp.PRIORITY_PUSH_MINIMUM.property());
+        values[PRIORITY_METRICS] = settings.getString(DaDaPushNotificationProp.PRIORITY_METRICS.property());
+        values[DELTA_ENABLED] = settings.getString(DaDaPushNotificationProp.DELTA_ENABLED.property());
+        values[SERVER_URL] = settings.getString(SERVER_BASE_URL_PROPERTY);
+        return values;
+    }
+
+    /**
+     * @return previous if the relevant settings did not change, otherwise a new snapshot with a higher version
+     */
+    static ConfigSnapshot refresh(Settings settings, ConfigSnapshot previous) {
+        String[] projectConfigIndexes = settings.getStringArray(DaDaPushNotificationProp.CONFIG.property());
+        String[][] rawValues = new String[projectConfigIndexes.length][];
+        for (int i = 0; i < projectConfigIndexes.length; i++) {
+            rawValues[i] = ProjectConfig.readRawValues(settings, projectConfigIndexes[i]);
+        }
+        String[] routingRuleIndexes = settings.getStringArray(DaDaPushNotificationProp.ROUTING.property());
+        String[][] routingRawValues = new String[routingRuleIndexes.length][];
+        for (int i = 0; i < routingRuleIndexes.length; i++) {
+            routingRawValues[i] = RoutingRule.readRawValues(settings, routingRuleIndexes[i]);
+        }
+        String[] globalRawValues = readGlobalRawValues(settings);
+        boolean routingUnchanged = Arrays.deepEquals(routingRawValues, previous.routingFingerprint);
+        boolean projectConfigsUnchanged = Arrays.deepEquals(rawValues, previous.fingerprint);
+        if (routingUnchanged && projectConfigsUnchanged && Arrays.equals(globalRawValues, previous.globalFingerprint)) {
+            return previous;
+        }
+        RoutingRules routingRules = routingUnchanged ? previous.routingRules : compileRoutingRules(routingRawValues);
+        if (projectConfigsUnchanged) {
+            return new ConfigSnapshot(previous.version + 1, previous.fingerprint, previous.projectConfigIndex,
+                    previous.projectConfigMap, routingRawValues, routingRules, globalRawValues, previous.defaultTemplate);
+        }
+
+        LOG.info("DaDaPushNotificationProp.CONFIG=[{}]", projectConfigIndexes);
+        Map<String, ProjectConfig> map = new HashMap<>();
+        for (String[] raw : rawValues) {
+            ProjectConfig value = ProjectConfig.fromRawValues(raw);
+            if (value.getProjectKey() == null) {
+                throw MessageException.of("DaDaPush Notification configuration is corrupted. At least one project specific parameter has no project key. " +
+                        "Contact your administrator to update this configuration in the global administration section of SonarQube.");
+            }
+            ProjectConfig old = previous.projectConfigMap.get(value.getProjectKey());
+            map.put(value.getProjectKey(), value.equals(old) ? old : value);
+        }
+        return new ConfigSnapshot(previous.version + 1, rawValues, new ProjectConfigIndex(map), map, routingRawValues,
+                routingRules, globalRawValues, previous.defaultTemplate);
+    }
+
+    private static RoutingRules compileRoutingRules(String[][] rawValues) {
+        List<RoutingRule> rules = new ArrayList<>(rawValues.length);
+        for (int i = 0; i < rawValues.length; i++) {
+            rules.add(RoutingRule.fromRawValues(i, rawValues[i]));
+        }
+        LOG.info("DaDaPushNotificationProp.ROUTING compiled {} rule(s)", rules.size());
+        return new RoutingRules(rules);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    Map<String, ProjectConfig> getProjectConfigMap() {
+        return projectConfigMap;
+    }
+
+    ProjectConfigIndex getProjectConfigIndex() {
+        return projectConfigIndex;
+    }
+
+    RoutingRules getRoutingRules() {
+        return routingRules;
+    }
+
+    String getBasePath() {
+        return globalFingerprint[BASE_PATH];
+    }
+
+    /**
+     * @return the global template, {@link MessageTemplate#DEFAULT} if none is set
+     */
+    MessageTemplate getDefaultTemplate() {
+        return defaultTemplate;
+    }
+
+    DedupMode getDedupMode() {
+        return dedupMode;
+    }
+
+    long getDedupTtl() {
+        return dedupTtl;
+    }
+
+    Priority getPushMinimum() {
+        return pushMinimum;
+    }
+
+    List<String> getPriorityMetrics() {
+        return priorityMetrics;
+    }
+
+    boolean isDeltaEnabled() {
+        return Boolean.parseBoolean(globalFingerprint[DELTA_ENABLED]);
+    }
+
+    /**
+     * @return the SonarQube server url with a trailing /, null if it is not set
+     */
+    String getSonarServerUrl() {
+        String url = globalFingerprint[SERVER_URL];
+        if (url == null || url.endsWith("/")) {
+            return url;
+        }
+        return url + "/";
+    }
+
+    /**
+     * @return the tokens of all channels of the project configurations and routing rules
+     */
+    Set<String> getChannelTokens() {
+        Set<String> tokens = new HashSet<>();
+        for (ProjectConfig projectConfig : projectConfigMap.values()) {
+            projectConfig.getChannels().forEach(channel -> tokens.add(channel.getToken()));
+        }
+        for (RoutingRule rule : routingRules.getRules()) {
+            rule.getChannels().forEach(channel -> tokens.add(channel.getToken()));
+        }
+        return tokens;
+    }
+
+    /**
+     * @return configurations present in this snapshot but not in other
+     */
+    Set<ProjectConfig> differenceFrom(ConfigSnapshot other) {
+        Set<ProjectConfig> result = new HashSet<>(projectConfigMap.values());
+        result.removeAll(other.projectConfigMap.values());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + " with " + projectConfigMap.size() + " project config(s) and " + routingRules.size()
+                + " routing rule(s)";
+    }
+}
@@ -21,7 +21,190 @@ public enum DaDaPushNotificationProp {
     /**
      * @see DaDaPushNotificationProp#CONFIG
      */
-    QG_FAIL_ONLY("qg");
+    QG_FAIL_ONLY("qg"),
+    /**
+     * Project specific content template, overrides {@link DaDaPushNotificationProp#TEMPLATE}.
+     *
+     * @see DaDaPushNotificationProp#CONFIG
+     */
+    PROJECT_TEMPLATE("template"),
+    /**
+     * Notifications of this project are always sent with {@link Priority#HIGH}.
+     *
+     * @see DaDaPushNotificationProp#CONFIG
+     */
+    PROJECT_HIGH_PRIORITY("highPriority"),
+    /**
+     * Ordered rules choosing the channels of an analysis by project, branch, status and scanner properties.
+     *
+     * @see RoutingRule
+     */
+    ROUTING("dadapush.routing"),
+    /**
+     * @see DaDaPushNotificationProp#ROUTING
+     */
+    ROUTE_BRANCH("branch"),
+    /**
+     * @see DaDaPushNotificationProp#ROUTING
+     */
+    ROUTE_BRANCH_TYPE("branchType"),
+    /**
+     * @see DaDaPushNotificationProp#ROUTING
+     */
+    ROUTE_STATUS("status"),
+    /**
+     * @see DaDaPushNotificationProp#ROUTING
+     */
+    ROUTE_SCANNER_PROPERTY("scannerProperty"),
+    /**
+     * Content template used when a project has no template of its own.
+     *
+     * @see MessageTemplate
+     */
+    TEMPLATE("dadapush.template"),
+
+    /**
+     * Maximum number of notifications waiting in the in-memory delivery queue.
+     */
+    DELIVERY_QUEUE_CAPACITY("dadapush.delivery.queueCapacity"),
+    /**
+     * Number of dedicated threads sending queued notifications.
+     */
+    DELIVERY_WORKERS("dadapush.delivery.workers"),
+    /**
+     * What to do when the delivery queue is full.
+     *
+     * @see OverflowPolicy
+     */
+    DELIVERY_OVERFLOW_POLICY("dadapush.delivery.overflowPolicy"),
+    /**
+     * How long to wait for free queue space when {@link OverflowPolicy#BLOCK} is used.
+     */
+    DELIVERY_BLOCK_TIMEOUT("dadapush.delivery.blockTimeoutMs"),
+    /**
+     * How long to keep delivering queued notifications when the Compute Engine shuts down.
+     */
+    DELIVERY_SHUTDOWN_TIMEOUT("dadapush.delivery.shutdownTimeoutMs"),
+    /**
+     * Notifications for the same channel within this window are merged into one digest. 0 disables batching.
+     */
+    DELIVERY_BATCH_WINDOW("dadapush.delivery.batchWindowMs"),
+    /**
+     * Which threads send notifications.
+     *
+     * @see ExecutorMode
+     */
+    DELIVERY_EXECUTOR("dadapush.delivery.executor"),
+    /**
+     * Maximum notifications sent at the same time on virtual threads.
+     */
+    DELIVERY_MAX_IN_FLIGHT("dadapush.delivery.maxInFlight"),
+
+    /**
+     * A queued notification gains one {@link Priority} level per this many milliseconds it waited.
+     */
+    PRIORITY_AGING("dadapush.priority.agingMs"),
+    /**
+     * Lowest {@link Priority} which is sent with needPush, so that it wakes devices.
+     */
+    PRIORITY_PUSH_MINIMUM("dadapush.priority.pushMinimum"),
+    /**
+     * Comma separated metric keys, a failed condition on one of them makes the notification {@link Priority#HIGH}.
+     */
+    PRIORITY_METRICS("dadapush.priority.metrics"),
+
+    /**
+     * Connect timeout of the DaDaPush HTTP client.
+     */
+    HTTP_CONNECT_TIMEOUT("dadapush.http.connectTimeoutMs"),
+    /**
+     * Read timeout of the DaDaPush HTTP client.
+     */
+    HTTP_READ_TIMEOUT("dadapush.http.readTimeoutMs"),
+    /**
+     * Write timeout of the DaDaPush HTTP client.
+     */
+    HTTP_WRITE_TIMEOUT("dadapush.http.writeTimeoutMs"),
+    /**
+     * Should request bodies be sent gzip compressed?
+     *
+     * @see Payload
+     */
+    HTTP_GZIP("dadapush.http.gzip"),
+
+    /**
+     * Maximum number of attempts to send one notification.
+     *
+     * @see RetryPolicy
+     */
+    RETRY_MAX_ATTEMPTS("dadapush.retry.maxAttempts"),
+    /**
+     * Delay before the first retry, doubled for every further retry.
+     */
+    RETRY_INITIAL_BACKOFF("dadapush.retry.initialBackoffMs"),
+    /**
+     * Upper bound of the delay between two retries.
+     */
+    RETRY_MAX_BACKOFF("dadapush.retry.maxBackoffMs"),
+    /**
+     * DaDaPush result codes which are worth retrying. All other non-zero result codes are permanent failures.
+     */
+    RETRY_CODES("dadapush.retry.retryableCodes"),
+    /**
+     * Number of consecutive retryable failures after which a base path is not called for a while.
+     *
+     * @see CircuitBreaker
+     */
+    CIRCUIT_FAILURE_THRESHOLD("dadapush.circuit.failureThreshold"),
+    /**
+     * How long a base path is not called once its circuit breaker opened.
+     */
+    CIRCUIT_OPEN_DURATION("dadapush.circuit.openDurationMs"),
+    /**
+     * How long a notification waits for an open circuit breaker before it is given up.
+     */
+    CIRCUIT_MAX_DEFERRAL("dadapush.circuit.maxDeferralMs"),
+
+    /**
+     * Should undelivered notifications be persisted in the SonarQube data directory?
+     *
+     * @see Outbox
+     */
+    OUTBOX_ENABLED("dadapush.outbox.enabled"),
+    /**
+     * How often outbox writes are forced to disk.
+     */
+    OUTBOX_SYNC_INTERVAL("dadapush.outbox.syncIntervalMs"),
+
+    /**
+     * Which repeated notifications are suppressed.
+     *
+     * @see DedupMode
+     */
+    DEDUP_MODE("dadapush.dedup.mode"),
+    /**
+     * How long a sent notification suppresses its repeats.
+     */
+    DEDUP_TTL("dadapush.dedup.ttlMs"),
+    /**
+     * Maximum notifications per minute and channel token. 0 disables rate limiting.
+     */
+    RATE_LIMIT("dadapush.rateLimit.perMinute"),
+    /**
+     * Notifications a channel may send at once before {@link DaDaPushNotificationProp#RATE_LIMIT} applies.
+     */
+    RATE_LIMIT_BURST("dadapush.rateLimit.burst"),
+
+    /**
+     * Should ${conditions} only render what changed since the previous notification of the project?
+     *
+     * @see ProjectStateStore
+     */
+    DELTA_ENABLED("dadapush.delta.enabled"),
+    /**
+     * Should the state of the previous notifications be persisted in the SonarQube data directory?
+     */
+    DELTA_PERSIST("dadapush.delta.persist");
 
     private String property;
 
@@ -1,14 +1,54 @@
 package com.dadapush.client.sonar;
 
 import static com.dadapush.client.sonar.DaDaPushNotificationProp.CHANNEL_TOKEN;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.CIRCUIT_FAILURE_THRESHOLD;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.CIRCUIT_MAX_DEFERRAL;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.CIRCUIT_OPEN_DURATION;
 import static com.dadapush.client.sonar.DaDaPushNotificationProp.CONFIG;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DEDUP_MODE;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DEDUP_TTL;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_BATCH_WINDOW;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELTA_ENABLED;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELTA_PERSIST;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_BLOCK_TIMEOUT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_EXECUTOR;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_MAX_IN_FLIGHT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_OVERFLOW_POLICY;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_QUEUE_CAPACITY;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_SHUTDOWN_TIMEOUT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.DELIVERY_WORKERS;
 import static com.dadapush.client.sonar.DaDaPushNotificationProp.ENABLED;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.HTTP_CONNECT_TIMEOUT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.HTTP_GZIP;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.HTTP_READ_TIMEOUT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.HTTP_WRITE_TIMEOUT;
 import static com.dadapush.client.sonar.DaDaPushNotificationProp.BASE_PATH;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.OUTBOX_ENABLED;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.OUTBOX_SYNC_INTERVAL;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.PRIORITY_AGING;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.PRIORITY_METRICS;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.PRIORITY_PUSH_MINIMUM;
 import static com.dadapush.client.sonar.DaDaPushNotificationProp.PROJECT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.PROJECT_HIGH_PRIORITY;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.PROJECT_TEMPLATE;
 import static com.dadapush.client.sonar.DaDaPushNotificationProp.QG_FAIL_ONLY;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.RATE_LIMIT;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.RATE_LIMIT_BURST;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.RETRY_CODES;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.RETRY_INITIAL_BACKOFF;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.RETRY_MAX_ATTEMPTS;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.RETRY_MAX_BACKOFF;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.ROUTE_BRANCH;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.ROUTE_BRANCH_TYPE;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.ROUTE_SCANNER_PROPERTY;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.ROUTE_STATUS;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.ROUTING;
+import static com.dadapush.client.sonar.DaDaPushNotificationProp.TEMPLATE;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.sonar.api.Plugin;
 import org.sonar.api.PropertyType;
 import org.sonar.api.config.PropertyDefinition;
@@ -18,6 +58,9 @@ public class DaDaPushPlugin implements Plugin {
 
   private static final String CATEGORY = "DaDaPush";
   private static final String SUBCATEGORY = "DaDaPush Notification";
+  private static final String DELIVERY_SUBCATEGORY = "DaDaPush Delivery";
+  private static final String TEMPLATE_DESCRIPTION = "Variables: ${project.name}, ${project.key}, "
+      + "${project.url}, ${status}, ${conditions}. The content is cut after 500 characters.";
 
 
   @Override
@@ -28,6 +71,11 @@ public class DaDaPushPlugin implements Plugin {
     addPluginPropertyDefinitions(extensions);
 
     // The actual plugin component(s)
+    extensions.add(MetricCache.class);
+    extensions.add(NotificationStats.class);
+    extensions.add(ApiClientHolder.class);
+    extensions.add(NotificationDispatcher.class);
+    extensions.add(ProjectStateStore.class);
     extensions.add(DaDaPushPostProjectAnalysisTask.class);
 
     context.addExtensions(extensions);
@@ -71,15 +119,377 @@ public class DaDaPushPlugin implements Plugin {
                     .build(),
                 PropertyFieldDefinition.build(CHANNEL_TOKEN.property())
                     .name("Channel Token")
-                    .description("create DaDaPush channel: https://www.dadapush.com/channel/list")
+                    .description("create DaDaPush channel: https://www.dadapush.com/channel/list. "
+                        + "Separate several tokens with ',', append ':ERROR' or ':WARN' to a token to notify "
+                        + "it only about Quality Gates with at least that status")
                     .type(PropertyType.STRING)
                     .build(),
                 PropertyFieldDefinition.build(QG_FAIL_ONLY.property())
                     .name("Send on failed Quality Gate")
                     .description("Should notification be sent only if Quality Gate did not pass OK")
                     .type(PropertyType.BOOLEAN)
+                    .build(),
+                PropertyFieldDefinition.build(PROJECT_TEMPLATE.property())
+                    .name("Message template")
+                    .description("Leave empty to use the global message template. " + TEMPLATE_DESCRIPTION)
+                    .type(PropertyType.TEXT)
+                    .build(),
+                PropertyFieldDefinition.build(PROJECT_HIGH_PRIORITY.property())
+                    .name("High priority")
+                    .description("Deliver notifications of this project ahead of others, whatever their status")
+                    .type(PropertyType.BOOLEAN)
                     .build()
             )
             .build());
+    extensions.add(PropertyDefinition.builder(TEMPLATE.property())
+        .name("Message template")
+        .description("Content of the notification. " + TEMPLATE_DESCRIPTION)
+        .type(PropertyType.TEXT)
+        .category(CATEGORY)
+        .subCategory(SUBCATEGORY)
+        .defaultValue(MessageTemplate.DEFAULT)
+        .index(20)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELTA_ENABLED.property())
+        .name("Only notify changes")
+        .description("${conditions} only lists the conditions which changed since the previous notification "
+            + "of the project. The first notification after enabling lists all conditions.")
+        .type(PropertyType.BOOLEAN)
+        .category(CATEGORY)
+        .subCategory(SUBCATEGORY)
+        .defaultValue("false")
+        .index(30)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELTA_PERSIST.property())
+        .name("Persist previous notifications")
+        .description("Keep the conditions of the previous notifications in the SonarQube data directory, "
+            + "so changes are notified across restarts.")
+        .type(PropertyType.BOOLEAN)
+        .category(CATEGORY)
+        .subCategory(SUBCATEGORY)
+        .defaultValue("false")
+        .index(31)
+        .build());
+    extensions.add(
+        PropertyDefinition.builder(ROUTING.property())
+            .name("Routing rules")
+            .description("Rules choosing the channels of an analysis of a configured project, checked in order. "
+                + "The first rule matching all of its non empty conditions replaces the channels of the project, "
+                + "when no rule matches the project channels are notified.")
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(32)
+            .fields(
+                PropertyFieldDefinition.build(PROJECT.property())
+                    .name("Project Key")
+                    .description("Ex: com.dadapush.client:sonar-dadapush-plugin, can use '*' wildcard at the end, "
+                        + "empty for all projects")
+                    .type(PropertyType.STRING)
+                    .build(),
+                PropertyFieldDefinition.build(ROUTE_BRANCH_TYPE.property())
+                    .name("Branch type")
+                    .description("MAIN, BRANCH (any other branch) or PULL_REQUEST")
+                    .type(PropertyType.SINGLE_SELECT_LIST)
+                    .options(Arrays.stream(BranchScope.values()).map(Enum::name).collect(Collectors.toList()))
+                    .build(),
+                PropertyFieldDefinition.build(ROUTE_BRANCH.property())
+                    .name("Branch name")
+                    .description("Branch or pull request name, '*' matches any characters. Ex: feature/*")
+                    .type(PropertyType.STRING)
+                    .build(),
+                PropertyFieldDefinition.build(ROUTE_STATUS.property())
+                    .name("Quality Gate status")
+                    .description("Comma separated Quality Gate statuses. Ex: WARN,ERROR")
+                    .type(PropertyType.STRING)
+                    .build(),
+                PropertyFieldDefinition.build(ROUTE_SCANNER_PROPERTY.property())
+                    .name("Scanner property")
+                    .description("key=value of a scanner context property, '*' in the value matches any characters. "
+                        + "A key alone matches if the property is set")
+                    .type(PropertyType.STRING)
+                    .build(),
+                PropertyFieldDefinition.build(CHANNEL_TOKEN.property())
+                    .name("Channel Token")
+                    .description("Channels to notify, same format as in the project specific configuration. "
+                        + "Empty drops the notification")
+                    .type(PropertyType.STRING)
+                    .build()
+            )
+            .build());
+    addDeliveryPropertyDefinitions(extensions);
+  }
+
+  private void addDeliveryPropertyDefinitions(List<Object> extensions) {
+    extensions.add(PropertyDefinition.builder(DELIVERY_QUEUE_CAPACITY.property())
+        .name("Delivery queue capacity")
+        .description("Maximum number of notifications waiting to be sent. Requires a restart.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("1000")
+        .index(3)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_WORKERS.property())
+        .name("Delivery workers")
+        .description("Number of platform threads sending notifications, used when virtual threads are not "
+            + "available. Requires a restart.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("4")
+        .index(4)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_OVERFLOW_POLICY.property())
+        .name("Delivery overflow policy")
+        .description("What to do when the delivery queue is full: drop the oldest queued notification, "
+            + "drop the new notification, or block the analysis for up to the block timeout.")
+        .type(PropertyType.SINGLE_SELECT_LIST)
+        .options(Arrays.stream(OverflowPolicy.values()).map(Enum::name).collect(Collectors.toList()))
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue(OverflowPolicy.DROP_OLDEST.name())
+        .index(5)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_BLOCK_TIMEOUT.property())
+        .name("Delivery block timeout (ms)")
+        .description("How long an analysis waits for free queue space with the BLOCK overflow policy.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("100")
+        .index(6)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_SHUTDOWN_TIMEOUT.property())
+        .name("Delivery shutdown timeout (ms)")
+        .description("How long queued notifications keep being sent when the server shuts down.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("10000")
+        .index(7)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_BATCH_WINDOW.property())
+        .name("Batching window (ms)")
+        .description("Notifications for the same channel token arriving within this window are merged "
+            + "into a single digest message. 0 sends every notification on its own.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("0")
+        .index(8)
+        .build());
+    extensions.add(PropertyDefinition.builder(HTTP_CONNECT_TIMEOUT.property())
+        .name("Connect timeout (ms)")
+        .description("Connect timeout of the HTTP client calling DaDaPush.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("10000")
+        .index(9)
+        .build());
+    extensions.add(PropertyDefinition.builder(HTTP_READ_TIMEOUT.property())
+        .name("Read timeout (ms)")
+        .description("Read timeout of the HTTP client calling DaDaPush.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("10000")
+        .index(10)
+        .build());
+    extensions.add(PropertyDefinition.builder(HTTP_WRITE_TIMEOUT.property())
+        .name("Write timeout (ms)")
+        .description("Write timeout of the HTTP client calling DaDaPush.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("10000")
+        .index(11)
+        .build());
+    extensions.add(PropertyDefinition.builder(RETRY_MAX_ATTEMPTS.property())
+        .name("Maximum attempts")
+        .description("How often a notification is sent before giving up. 1 disables retries.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("5")
+        .index(12)
+        .build());
+    extensions.add(PropertyDefinition.builder(RETRY_INITIAL_BACKOFF.property())
+        .name("Initial retry backoff (ms)")
+        .description("Delay before the first retry. The delay doubles with every further retry, "
+            + "and a random jitter of up to half the delay is applied.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("1000")
+        .index(13)
+        .build());
+    extensions.add(PropertyDefinition.builder(RETRY_MAX_BACKOFF.property())
+        .name("Maximum retry backoff (ms)")
+        .description("Upper bound of the delay between two retries.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("60000")
+        .index(14)
+        .build());
+    extensions.add(PropertyDefinition.builder(RETRY_CODES.property())
+        .name("Retryable result codes")
+        .description("Comma separated DaDaPush result codes that are retried. Transport errors, "
+            + "HTTP 408, 429 and 5xx are always retried, other failures never.")
+        .type(PropertyType.STRING)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .index(15)
+        .build());
+    extensions.add(PropertyDefinition.builder(CIRCUIT_FAILURE_THRESHOLD.property())
+        .name("Circuit breaker failure threshold")
+        .description("Number of consecutive retryable failures after which DaDaPush is not called "
+            + "for the circuit breaker open duration.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("5")
+        .index(16)
+        .build());
+    extensions.add(PropertyDefinition.builder(CIRCUIT_OPEN_DURATION.property())
+        .name("Circuit breaker open duration (ms)")
+        .description("How long DaDaPush is not called after the circuit breaker opened. "
+            + "Then a single probe decides whether it closes again.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("30000")
+        .index(17)
+        .build());
+    extensions.add(PropertyDefinition.builder(CIRCUIT_MAX_DEFERRAL.property())
+        .name("Circuit breaker maximum wait (ms)")
+        .description("How long a notification waits for an open circuit breaker before it is given up. Waiting "
+            + "does not count as a delivery attempt.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("86400000")
+        .index(34)
+        .build());
+    extensions.add(PropertyDefinition.builder(OUTBOX_ENABLED.property())
+        .name("Persist undelivered notifications")
+        .description("Keep notifications which are not delivered yet in the SonarQube data directory, "
+            + "so they are sent after a restart. Channel tokens are not written to disk. Requires a restart.")
+        .type(PropertyType.BOOLEAN)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("false")
+        .index(18)
+        .build());
+    extensions.add(PropertyDefinition.builder(OUTBOX_SYNC_INTERVAL.property())
+        .name("Outbox sync interval (ms)")
+        .description("How often persisted notifications are forced to disk. Requires a restart.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("200")
+        .index(19)
+        .build());
+    extensions.add(PropertyDefinition.builder(DEDUP_MODE.property())
+        .name("Deduplication")
+        .description("Suppress notifications repeating the last one sent for the same project and channel "
+            + "within the deduplication TTL: SUPPRESS_REPEATS suppresses identical messages, "
+            + "STATUS_CHANGE only sends when the Quality Gate status changed.")
+        .type(PropertyType.SINGLE_SELECT_LIST)
+        .options(Arrays.stream(DedupMode.values()).map(Enum::name).collect(Collectors.toList()))
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue(DedupMode.OFF.name())
+        .index(21)
+        .build());
+    extensions.add(PropertyDefinition.builder(DEDUP_TTL.property())
+        .name("Deduplication TTL (ms)")
+        .description("How long a sent notification suppresses its repeats.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue(Long.toString(ConfigSnapshot.DEFAULT_DEDUP_TTL))
+        .index(22)
+        .build());
+    extensions.add(PropertyDefinition.builder(RATE_LIMIT.property())
+        .name("Rate limit (per minute)")
+        .description("Maximum notifications per minute and channel token, further notifications wait "
+            + "in the delivery queue. 0 disables rate limiting.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("0")
+        .index(23)
+        .build());
+    extensions.add(PropertyDefinition.builder(RATE_LIMIT_BURST.property())
+        .name("Rate limit burst")
+        .description("Notifications a channel token may send at once before the rate limit applies.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("10")
+        .index(24)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_EXECUTOR.property())
+        .name("Delivery threads")
+        .description("AUTO sends notifications on virtual threads when SonarQube runs on Java 21 or later, "
+            + "and on the delivery workers otherwise. VIRTUAL and PLATFORM force one of them. Requires a restart.")
+        .type(PropertyType.SINGLE_SELECT_LIST)
+        .options(Arrays.stream(ExecutorMode.values()).map(Enum::name).collect(Collectors.toList()))
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue(ExecutorMode.AUTO.name())
+        .index(25)
+        .build());
+    extensions.add(PropertyDefinition.builder(DELIVERY_MAX_IN_FLIGHT.property())
+        .name("Maximum notifications in flight")
+        .description("How many notifications are sent at the same time on virtual threads. Requires a restart.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("256")
+        .index(26)
+        .build());
+    extensions.add(PropertyDefinition.builder(PRIORITY_AGING.property())
+        .name("Priority aging (ms)")
+        .description("Failed Quality Gates are delivered before warnings, and warnings before passed ones. "
+            + "A waiting notification is raised one priority level per this many milliseconds, so none waits forever.")
+        .type(PropertyType.INTEGER)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("30000")
+        .index(27)
+        .build());
+    extensions.add(PropertyDefinition.builder(PRIORITY_PUSH_MINIMUM.property())
+        .name("Push notification priority")
+        .description("Lowest priority which wakes devices with a push notification: HIGH for failed Quality "
+            + "Gates, NORMAL for warnings, LOW for passed ones.")
+        .type(PropertyType.SINGLE_SELECT_LIST)
+        .options(Arrays.stream(Priority.values()).map(Enum::name).collect(Collectors.toList()))
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue(Priority.LOW.name())
+        .index(28)
+        .build());
+    extensions.add(PropertyDefinition.builder(PRIORITY_METRICS.property())
+        .name("High priority metrics")
+        .description("Comma separated metric keys, e.g. new_security_rating. A failed condition on one of "
+            + "them makes the notification high priority.")
+        .type(PropertyType.STRING)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .index(29)
+        .build());
+    extensions.add(PropertyDefinition.builder(HTTP_GZIP.property())
+        .name("Compress requests")
+        .description("Send notifications gzip compressed, if the DaDaPush endpoint supports it. Endpoints rejecting "
+            + "compressed requests get them uncompressed.")
+        .type(PropertyType.BOOLEAN)
+        .category(CATEGORY)
+        .subCategory(DELIVERY_SUBCATEGORY)
+        .defaultValue("false")
+        .index(33)
+        .build());
   }
 }
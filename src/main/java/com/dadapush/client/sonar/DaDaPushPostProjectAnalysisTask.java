@@ -1,24 +1,12 @@
 package com.dadapush.client.sonar;
 
-import com.dadapush.client.ApiClient;
-import com.dadapush.client.ApiException;
-import com.dadapush.client.Configuration;
-import com.dadapush.client.api.DaDaPushMessageApi;
 import com.dadapush.client.model.MessagePushRequest;
-import com.dadapush.client.model.ResultOfMessagePushResponse;
-import java.text.DecimalFormat;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import org.apache.commons.lang3.StringUtils;
+import org.sonar.api.ce.posttask.Branch;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Settings;
-import org.sonar.api.i18n.I18n;
-import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
@@ -28,195 +16,185 @@ public class DaDaPushPostProjectAnalysisTask extends AbstractComponent implement
 
   private static final Logger LOG = Loggers.get(DaDaPushPostProjectAnalysisTask.class);
 
-  private final I18n i18n;
+  private final MessageRenderer renderer;
 
-  private final ApiClient apiClient;
+  private final NotificationDispatcher dispatcher;
 
-  private DecimalFormat percentageFormat;
+  private final NotificationStats stats;
 
-  public DaDaPushPostProjectAnalysisTask(Settings settings, I18n i18n) {
+  private final MetricCache metricCache;
+
+  private final ProjectStateStore stateStore;
+
+  private final NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+
+  public DaDaPushPostProjectAnalysisTask(Settings settings, MetricCache metricCache,
+      NotificationDispatcher dispatcher, NotificationStats stats, ProjectStateStore stateStore) {
     super(settings);
-    apiClient = Configuration.getDefaultApiClient();
-    this.i18n = i18n;
-    this.percentageFormat = new DecimalFormat();
-    this.percentageFormat.setMaximumFractionDigits(2);
+    this.metricCache = metricCache;
+    this.stateStore = stateStore;
+    this.renderer = new MessageRenderer(metricCache);
+    this.dispatcher = dispatcher;
+    this.stats = stats;
   }
 
   @Override
   public void finished(ProjectAnalysis analysis) {
-    refreshSettings();
+    long start = System.nanoTime();
+    ConfigSnapshot snapshot = refreshSettings();
+    stats.refreshLatency().recordSince(start);
     if (!isPluginEnabled()) {
       LOG.info("DaDaPush Notification plugin disabled, skipping. Settings are [{}]",
           logRelevantSettings());
+      stats.skipped(SkipReason.DISABLED);
+      release();
       return;
     }
     LOG.info("Analysis ScannerContext: [{}]", analysis.getScannerContext().getProperties());
     String projectKey = analysis.getProject().getKey();
+    String subject = getSubject(analysis);
 
-    Optional<ProjectConfig> projectConfigOptional = getProjectConfig(projectKey);
+    start = System.nanoTime();
+    Optional<ProjectConfig> projectConfigOptional = getProjectConfig(snapshot, projectKey);
+    stats.lookupLatency().recordSince(start);
     if (!projectConfigOptional.isPresent()) {
+      stats.skipped(SkipReason.NO_CONFIG);
       return;
     }
 
     ProjectConfig projectConfig = projectConfigOptional.get();
-    if (shouldSkipSendingNotification(projectConfig, analysis.getQualityGate())) {
+    Optional<RoutingRule> routingRule = getRoutingRule(snapshot, analysis);
+    List<Channel> channels = routingRule.map(RoutingRule::getChannels).orElse(projectConfig.getChannels());
+    if (routingRule.isPresent() && channels.isEmpty()) {
+      LOG.info("DaDaPush Notification for [{}] dropped by {}", projectKey, routingRule.get());
+      stats.skipped(SkipReason.ROUTED);
       return;
     }
-    if (StringUtils.isEmpty(projectConfig.getChannelToken())) {
-      LOG.info("DaDaPush Notification will not sent, " + analysis.toString(),
-          projectConfig.toString());
+    Optional<SkipReason> skipReason = getSkipReason(projectConfig, channels, analysis.getQualityGate());
+    if (skipReason.isPresent()) {
+      stats.skipped(skipReason.get());
       return;
     }
     LOG.info("DaDaPush Notification will be sent: " + analysis.toString());
 
-    String basePath = getBasePath();
-    if (StringUtils.isNotEmpty(basePath)) {
-      apiClient.setBasePath(basePath);
-    }
-
-    QualityGate qualityGate = analysis.getQualityGate();
-
-    StringBuilder titleBuilder = new StringBuilder();
-
-    StringBuilder contentBuilder = new StringBuilder();
-    if (qualityGate != null) {
-      titleBuilder.append(qualityGate.getStatus());
-    } else {
-      titleBuilder.append("Unknown Status");
-    }
-
-    contentBuilder.append("Project: ").append(analysis.getProject().getName()).append("\n");
-
-    if (qualityGate != null) {
-      contentBuilder.append("Status: ").append(qualityGate.getStatus()).append("\n");
-      List<String> collect = qualityGate.getConditions()
-          .stream()
-          .filter(condition -> !projectConfig.isQgFailOnly() || notOkNorNoValue(condition))
-          .map(this::translate)
-          .collect(Collectors.toList());
-
-      final StringBuilder result = new StringBuilder();
-      Iterator<String> iterator = collect.iterator();
-      while (iterator.hasNext()) {
-        final String value = Objects.toString(iterator.next(), "");
-        result.append(value);
-
-        if (iterator.hasNext()) {
-          result.append("\n");
-        }
-      }
-      contentBuilder.append(result.toString()).append("\n");
-    } else {
-      contentBuilder.append("Status: Unknown").append("\n");
-    }
-
-    DaDaPushMessageApi apiInstance = new DaDaPushMessageApi(apiClient);
+    start = System.nanoTime();
+    String title = renderer.renderTitle(analysis.getQualityGate());
+    List<EvaluatedCondition> conditions = EvaluatedCondition.of(analysis.getQualityGate(), metricCache);
+    ProjectState previous = snapshot.isDeltaEnabled() ? stateStore.get(subject) : null;
+    String content = renderer.renderContent(getTemplate(snapshot, projectConfig), analysis, projectConfig,
+        snapshot.getSonarServerUrl(), conditions, previous);
+    Priority priority = getPriority(snapshot, analysis.getQualityGate(), projectConfig);
     MessagePushRequest body = new MessagePushRequest();
-    body.setTitle(StringUtils.substring(titleBuilder.toString(), 0, 50));
-    body.setContent(StringUtils.substring(contentBuilder.toString(), 0, 500));
-    body.setNeedPush(true);
-    try {
-      ResultOfMessagePushResponse result = apiInstance
-          .createMessage(body, Objects.requireNonNull(projectConfig.getChannelToken()));
-      if (result.getCode() == 0) {
-        LOG.info("send notification success, messageId=" + result.getData().getMessageId());
-      } else {
-        LOG
-            .warn("send DaDaPush Notification fail, detail: " + result.getCode() + " " + result
-                .getErrmsg());
+    body.setTitle(title);
+    body.setContent(content);
+    // only important notifications wake devices
+    body.setNeedPush(priority.compareTo(snapshot.getPushMinimum()) >= 0);
+    String summary = title + " " + analysis.getProject().getName();
+    stats.renderLatency().recordSince(start);
+
+    // one message per channel, all sharing the same body, delivered in parallel by the dispatcher
+    QualityGate.Status status = getStatus(analysis.getQualityGate());
+    String statusName = String.valueOf(status);
+    DedupMode dedupMode = snapshot.getDedupMode();
+    long dedupTtl = snapshot.getDedupTtl();
+    long fingerprint = NotificationDeduplicator.fingerprint(subject, title, content);
+    long now = System.currentTimeMillis();
+    String basePath = snapshot.getBasePath();
+    Payload payload = new Payload(body);
+    boolean accepted = false;
+    for (Channel channel : channels) {
+      if (!channel.accepts(status)) {
+        LOG.debug("Channel [{}] of project [{}] not notified about status {}", channel, projectKey, status);
+        continue;
       }
-    } catch (ApiException e) {
-      LOG.error("send DaDaPush Notification fail", e);
-    }
-  }
-
-  private boolean notOkNorNoValue(QualityGate.Condition condition) {
-    return !(QualityGate.EvaluationStatus.OK.equals(condition.getStatus())
-        || QualityGate.EvaluationStatus.NO_VALUE.equals(condition.getStatus()));
-  }
-
-  private String translate(QualityGate.Condition condition) {
-    String i18nKey = "metric." + condition.getMetricKey() + ".name";
-    String conditionName = i18n.message(Locale.ENGLISH, i18nKey, condition.getMetricKey());
-
-    if (QualityGate.EvaluationStatus.NO_VALUE.equals(condition.getStatus())) {
-      // No value for given metric
-      return conditionName + "\n" + condition.getStatus().name();
-    } else {
-      StringBuilder sb = new StringBuilder();
-      appendValue(condition, sb);
-      appendValuePostfix(condition, sb);
-      if (condition.getWarningThreshold() != null) {
-        sb.append(", warning if ");
-        appendValueOperatorPrefix(condition, sb);
-        sb.append(condition.getWarningThreshold());
-        appendValuePostfix(condition, sb);
-      }
-      if (condition.getErrorThreshold() != null) {
-        sb.append(", error if ");
-        appendValueOperatorPrefix(condition, sb);
-        sb.append(condition.getErrorThreshold());
-        appendValuePostfix(condition, sb);
+      if (!deduplicator.checkAndRecord(dedupMode, dedupTtl, now, subject, channel.getToken(), statusName,
+          fingerprint)) {
+        LOG.info("DaDaPush Notification for [{}] repeats the last one, skipping", subject);
+        stats.skipped(SkipReason.DUPLICATE);
+        continue;
       }
-      return conditionName + ": " + condition.getStatus().name() + "\n" + sb.toString();
-    }
-  }
-
-  private void appendValue(QualityGate.Condition condition, StringBuilder sb) {
-    if ("".equals(condition.getValue())) {
-      sb.append("value: ");
-      sb.append("NaN");
-    } else {
-      if (valueIsPercentage(condition)) {
-        sb.append("value: ");
-        appendPercentageValue(condition.getValue(), sb);
+      if (dispatcher.submit(new PendingMessage(projectKey, channel.getToken(), basePath, payload, summary,
+          priority))) {
+        accepted = true;
       } else {
-        sb.append("value: ");
-        sb.append(condition.getValue());
+        deduplicator.discarded(dedupMode, now, subject, channel.getToken(), statusName, fingerprint);
       }
     }
+    // the next delta is relative to what was actually sent
+    if (accepted && snapshot.isDeltaEnabled()) {
+      stateStore.put(subject, ProjectState.of(conditions));
+    }
   }
 
-  private void appendPercentageValue(String s, StringBuilder sb) {
-    try {
-      Double d = Double.parseDouble(s);
-      sb.append(percentageFormat.format(d));
-    } catch (NumberFormatException e) {
-      LOG.error("Failed to parse [{}] into a Double due to [{}]", s, e.getMessage());
-      sb.append(s);
+  /**
+   * @return the project key, followed by the branch or pull request unless the main branch was analyzed
+   */
+  static String getSubject(ProjectAnalysis analysis) {
+    String projectKey = analysis.getProject().getKey();
+    Optional<Branch> branch = analysis.getBranch();
+    BranchScope scope = BranchScope.of(branch);
+    if (scope == BranchScope.MAIN) {
+      return projectKey;
     }
+    String name = branch.flatMap(Branch::getName).orElse("");
+    return projectKey + (scope == BranchScope.PULL_REQUEST ? "|pr:" : "|branch:") + name;
   }
 
-  private void appendValueOperatorPrefix(QualityGate.Condition condition, StringBuilder sb) {
-    switch (condition.getOperator()) {
-      case EQUALS:
-        sb.append("==");
-        break;
-      case NOT_EQUALS:
-        sb.append("!=");
-        break;
-      case GREATER_THAN:
-        sb.append(">");
-        break;
-      case LESS_THAN:
-        sb.append("<");
+  /**
+   * @return HIGH for failed Quality Gates, high priority projects and failed priority metrics, NORMAL for
+   * warnings, LOW otherwise
+   */
+  private static Priority getPriority(ConfigSnapshot snapshot, QualityGate qualityGate, ProjectConfig projectConfig) {
+    if (projectConfig.isHighPriority()) {
+      return Priority.HIGH;
+    }
+    if (qualityGate == null) {
+      return Priority.NORMAL;
+    }
+    switch (qualityGate.getStatus()) {
+      case ERROR:
+        return Priority.HIGH;
+      case OK:
+        return Priority.LOW;
+      default:
         break;
     }
+    List<String> priorityMetrics = snapshot.getPriorityMetrics();
+    if (!priorityMetrics.isEmpty()) {
+      for (QualityGate.Condition condition : qualityGate.getConditions()) {
+        QualityGate.EvaluationStatus status = condition.getStatus();
+        if ((status == QualityGate.EvaluationStatus.ERROR || status == QualityGate.EvaluationStatus.WARN)
+            && priorityMetrics.contains(condition.getMetricKey())) {
+          return Priority.HIGH;
+        }
+      }
+    }
+    return Priority.NORMAL;
   }
 
-  private void appendValuePostfix(QualityGate.Condition condition, StringBuilder sb) {
-    if (valueIsPercentage(condition)) {
-      sb.append("%");
-    }
+  private static QualityGate.Status getStatus(QualityGate qualityGate) {
+    return qualityGate == null ? null : qualityGate.getStatus();
+  }
+
+  /**
+   * Frees what the delivery of earlier notifications built up: queue, threads, API client, caches and states.
+   * Cheap if nothing was built.
+   */
+  private void release() {
+    dispatcher.release();
+    metricCache.clear();
+    deduplicator.clear();
+    stateStore.clear();
   }
 
-  private boolean valueIsPercentage(QualityGate.Condition condition) {
-    switch (condition.getMetricKey()) {
-      case CoreMetrics.NEW_COVERAGE_KEY:
-      case CoreMetrics.NEW_SQALE_DEBT_RATIO_KEY:
-        return true;
+  /**
+   * @return the project specific template, or the global one of the snapshot
+   */
+  private static MessageTemplate getTemplate(ConfigSnapshot snapshot, ProjectConfig projectConfig) {
+    if (projectConfig.getMessageTemplate() != null) {
+      return projectConfig.getMessageTemplate();
     }
-    return false;
+    return snapshot.getDefaultTemplate();
   }
 
 }
@@ -0,0 +1,31 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Which repeated notifications of a project to the same channel are suppressed, see {@link NotificationDeduplicator}.
+ */
+public enum DedupMode {
+
+  /**
+   * Send every notification.
+   */
+  OFF,
+  /**
+   * Suppress a notification identical to the last one sent within the TTL.
+   */
+  SUPPRESS_REPEATS,
+  /**
+   * Only send when the Quality Gate status differs from the last one sent within the TTL.
+   */
+  STATUS_CHANGE;
+
+  static DedupMode parse(String value) {
+    if (value != null) {
+      for (DedupMode mode : values()) {
+        if (mode.name().equalsIgnoreCase(value.trim())) {
+          return mode;
+        }
+      }
+    }
+    return OFF;
+  }
+}
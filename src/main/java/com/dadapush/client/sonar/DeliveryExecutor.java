@@ -0,0 +1,133 @@
+package com.dadapush.client.sonar;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Runs deliveries with a bounded number in flight.
+ * <pre>
+ * 1) on Java 21 and later every delivery gets its own virtual thread, a push blocked on a slow endpoint
+ *    does not tie up an OS thread
+ * 2) on older JVMs, or if configured, deliveries run on a fixed pool of platform threads
+ * 3) {@link #execute(Runnable)} blocks while maxInFlight deliveries are running, so waiting notifications stay
+ *    in the delivery queue where the {@link OverflowPolicy} applies
+ * </pre>
+ * The plugin is compiled for Java 8, so virtual threads are looked up by reflection.
+ */
+class DeliveryExecutor {
+
+  private static final Logger LOG = Loggers.get(DeliveryExecutor.class);
+
+  private final ExecutorService executor;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final boolean virtual;
+
+  private DeliveryExecutor(ExecutorService executor, int maxInFlight, boolean virtual) {
+    this.executor = executor;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.maxInFlight = maxInFlight;
+    this.virtual = virtual;
+  }
+
+  /**
+   * @param platformThreads size of the platform thread pool, also the in-flight limit when it is used
+   * @param maxInFlight in-flight limit with virtual threads
+   */
+  static DeliveryExecutor create(ExecutorMode mode, int platformThreads, int maxInFlight) {
+    if (mode != ExecutorMode.PLATFORM) {
+      ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+      if (virtualExecutor != null) {
+        return new DeliveryExecutor(virtualExecutor, Math.max(1, maxInFlight), true);
+      }
+      if (mode == ExecutorMode.VIRTUAL) {
+        LOG.warn("Virtual threads are not supported by Java {}, using {} platform thread(s)",
+            System.getProperty("java.version"), platformThreads);
+      }
+    }
+    int threads = Math.max(1, platformThreads);
+    return new DeliveryExecutor(Executors.newFixedThreadPool(threads, new PlatformThreadFactory()), threads,
+        false);
+  }
+
+  /**
+   * @return Executors.newVirtualThreadPerTaskExecutor() if available, null otherwise
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      // before Java 21, or a preview feature which is not enabled
+      return null;
+    }
+  }
+
+  /**
+   * Waits for a free slot, then runs task asynchronously.
+   */
+  void execute(Runnable task) throws InterruptedException {
+    inFlight.acquire();
+    try {
+      executor.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          inFlight.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  boolean isVirtual() {
+    return virtual;
+  }
+
+  int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  boolean awaitTermination(long timeoutMs) throws InterruptedException {
+    return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  void shutdownNow() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return (virtual ? "virtual threads" : "platform threads") + ", at most " + maxInFlight + " in flight";
+  }
+
+  private static class PlatformThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "dadapush-delivery-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
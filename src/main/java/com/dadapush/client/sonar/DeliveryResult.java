@@ -0,0 +1,17 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Outcome of one attempt to send a notification.
+ */
+enum DeliveryResult {
+
+  DELIVERED,
+  /**
+   * The endpoint could not be reached or is temporarily failing, the same request may succeed later.
+   */
+  RETRYABLE_FAILURE,
+  /**
+   * DaDaPush rejected the request, sending it again would fail the same way.
+   */
+  PERMANENT_FAILURE
+}
@@ -0,0 +1,192 @@
+package com.dadapush.client.sonar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.sonar.api.ce.posttask.QualityGate;
+
+/**
+ * A Quality Gate condition with its metric resolved and its numbers parsed, built once per analysis.
+ * <pre>
+ * 1) value and thresholds are primitive doubles, NaN when missing or not numeric
+ * 2) the raw strings are kept, they are rendered as they are for metrics which are not numeric
+ * 3) numbers are validated before parsing, so malformed values never throw
+ * </pre>
+ * Instances are immutable.
+ */
+final class EvaluatedCondition {
+
+  /**
+   * Failed conditions first, then warnings, passed ones and those without value. Stable within a status.
+   */
+  static final Comparator<EvaluatedCondition> FAILED_FIRST = Comparator.comparingInt(c -> severityRank(c.status));
+
+  private final MetricDescriptor metric;
+  private final QualityGate.EvaluationStatus status;
+  private final QualityGate.Operator operator;
+  private final double value;
+  private final double warningThreshold;
+  private final double errorThreshold;
+  private final String rawValue;
+  private final String rawWarningThreshold;
+  private final String rawErrorThreshold;
+
+  private EvaluatedCondition(MetricDescriptor metric, QualityGate.Condition condition) {
+    this.metric = metric;
+    this.status = condition.getStatus();
+    this.operator = condition.getOperator();
+    // getValue() throws for NO_VALUE
+    this.rawValue = status == QualityGate.EvaluationStatus.NO_VALUE ? null : condition.getValue();
+    this.rawWarningThreshold = condition.getWarningThreshold();
+    this.rawErrorThreshold = condition.getErrorThreshold();
+    this.value = parse(rawValue);
+    this.warningThreshold = parse(rawWarningThreshold);
+    this.errorThreshold = parse(rawErrorThreshold);
+  }
+
+  /**
+   * @return the conditions of qualityGate, failed ones first
+   */
+  static List<EvaluatedCondition> of(QualityGate qualityGate, MetricCache metricCache) {
+    if (qualityGate == null) {
+      return Collections.emptyList();
+    }
+    Collection<QualityGate.Condition> conditions = qualityGate.getConditions();
+    List<EvaluatedCondition> result = new ArrayList<>(conditions.size());
+    for (QualityGate.Condition condition : conditions) {
+      result.add(new EvaluatedCondition(metricCache.get(condition.getMetricKey()), condition));
+    }
+    result.sort(FAILED_FIRST);
+    return result;
+  }
+
+  MetricDescriptor getMetric() {
+    return metric;
+  }
+
+  QualityGate.EvaluationStatus getStatus() {
+    return status;
+  }
+
+  QualityGate.Operator getOperator() {
+    return operator;
+  }
+
+  /**
+   * @return the measured value, NaN if there is none or it is not numeric
+   */
+  double getValue() {
+    return value;
+  }
+
+  double getWarningThreshold() {
+    return warningThreshold;
+  }
+
+  double getErrorThreshold() {
+    return errorThreshold;
+  }
+
+  /**
+   * @return the measured value as reported by SonarQube, null for {@link QualityGate.EvaluationStatus#NO_VALUE}
+   */
+  String getRawValue() {
+    return rawValue;
+  }
+
+  String getRawWarningThreshold() {
+    return rawWarningThreshold;
+  }
+
+  String getRawErrorThreshold() {
+    return rawErrorThreshold;
+  }
+
+  boolean hasValue() {
+    return status != QualityGate.EvaluationStatus.NO_VALUE;
+  }
+
+  /**
+   * @return true if the condition is neither OK nor without value
+   */
+  boolean isFailed() {
+    return status == QualityGate.EvaluationStatus.ERROR || status == QualityGate.EvaluationStatus.WARN;
+  }
+
+  private static int severityRank(QualityGate.EvaluationStatus status) {
+    switch (status) {
+      case ERROR:
+        return 0;
+      case WARN:
+        return 1;
+      case OK:
+        return 2;
+      case NO_VALUE:
+      default:
+        return 3;
+    }
+  }
+
+  /**
+   * @return the decimal number in value, NaN if value is null or not a plain decimal number
+   */
+  static double parse(String value) {
+    if (value == null || !isDecimal(value)) {
+      return Double.NaN;
+    }
+    return Double.parseDouble(value);
+  }
+
+  /**
+   * Accepts [+-]digits[.digits][(e|E)[+-]digits] with at least one digit in the mantissa, which
+   * {@link Double#parseDouble(String)} always parses.
+   */
+  private static boolean isDecimal(String value) {
+    int length = value.length();
+    int i = 0;
+    if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+      i++;
+    }
+    int digits = 0;
+    while (i < length && isDigit(value.charAt(i))) {
+      i++;
+      digits++;
+    }
+    if (i < length && value.charAt(i) == '.') {
+      i++;
+      while (i < length && isDigit(value.charAt(i))) {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+        i++;
+      }
+      int exponentDigits = 0;
+      while (i < length && isDigit(value.charAt(i))) {
+        i++;
+        exponentDigits++;
+      }
+      if (exponentDigits == 0) {
+        return false;
+      }
+    }
+    return i == length;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  @Override
+  public String toString() {
+    return metric.getKey() + ": " + status + " (" + rawValue + ")";
+  }
+}
@@ -0,0 +1,31 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Which threads send notifications, see {@link DeliveryExecutor}.
+ */
+public enum ExecutorMode {
+
+  /**
+   * Virtual threads if the JVM supports them, platform threads otherwise.
+   */
+  AUTO,
+  /**
+   * One virtual thread per notification in flight. Falls back to platform threads on a JVM before Java 21.
+   */
+  VIRTUAL,
+  /**
+   * A fixed pool of {@link DaDaPushNotificationProp#DELIVERY_WORKERS} platform threads.
+   */
+  PLATFORM;
+
+  static ExecutorMode parse(String value) {
+    if (value != null) {
+      for (ExecutorMode mode : values()) {
+        if (mode.name().equalsIgnoreCase(value.trim())) {
+          return mode;
+        }
+      }
+    }
+    return AUTO;
+  }
+}
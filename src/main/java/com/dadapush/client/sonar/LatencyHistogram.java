@@ -0,0 +1,88 @@
+package com.dadapush.client.sonar;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets, bucket i counts durations below 2^i nanoseconds.
+ * Percentiles are reported as the upper bound of their bucket, so they are exact within a factor of 2.
+ */
+final class LatencyHistogram {
+
+  private static final int BUCKETS = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  void record(long nanos) {
+    long value = Math.max(0L, nanos);
+    buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * @return time since startNanos, after recording it
+   */
+  long recordSince(long startNanos) {
+    long elapsed = System.nanoTime() - startNanos;
+    record(elapsed);
+    return elapsed;
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  double getMeanMillis() {
+    long n = count.sum();
+    return n == 0 ? 0d : sum.sum() / (double) n / 1_000_000d;
+  }
+
+  double getMaxMillis() {
+    return max.get() / 1_000_000d;
+  }
+
+  /**
+   * @param percentile between 0 and 1
+   */
+  double getPercentileMillis(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0d;
+    }
+    long rank = (long) Math.ceil(percentile * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(1L << Math.min(i, 62), max.get()) / 1_000_000d;
+      }
+    }
+    return getMaxMillis();
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0L);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms", getCount(),
+        getMeanMillis(), getPercentileMillis(0.5d), getPercentileMillis(0.99d), getMaxMillis());
+  }
+}
@@ -0,0 +1,59 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Reusable character buffer with a hard length limit. Writes beyond the limit are silently cut,
+ * so callers can check {@link #isFull()} and stop producing text early.
+ * Not thread-safe, every thread uses its own instance, see {@link #forCurrentThread(int)}.
+ */
+final class MessageBuffer {
+
+  private static final ThreadLocal<MessageBuffer> BUFFERS = ThreadLocal
+      .withInitial(MessageBuffer::new);
+
+  private final StringBuilder sb = new StringBuilder(PendingMessage.MAX_CONTENT_LENGTH);
+  private int limit;
+
+  private MessageBuffer() {
+  }
+
+  /**
+   * @return the emptied buffer of the calling thread
+   */
+  static MessageBuffer forCurrentThread(int limit) {
+    MessageBuffer buffer = BUFFERS.get();
+    buffer.sb.setLength(0);
+    buffer.limit = limit;
+    return buffer;
+  }
+
+  MessageBuffer append(CharSequence s) {
+    if (s == null) {
+      s = "null";
+    }
+    int remaining = limit - sb.length();
+    if (remaining > 0) {
+      sb.append(s, 0, Math.min(remaining, s.length()));
+    }
+    return this;
+  }
+
+  MessageBuffer append(char c) {
+    if (sb.length() < limit) {
+      sb.append(c);
+    }
+    return this;
+  }
+
+  boolean isFull() {
+    return sb.length() >= limit;
+  }
+
+  int length() {
+    return sb.length();
+  }
+
+  @Override
+  public String toString() {
+    return sb.toString();
+  }
+}
@@ -0,0 +1,144 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.model.MessagePushRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Merges notifications for the same channel arriving within a time window into a single digest.
+ * <pre>
+ * 1) the first notification for a channel opens a batch and schedules its flush after the window
+ * 2) further notifications for that channel are added to the open batch
+ * 3) on flush a batch of one is forwarded unchanged, larger batches are forwarded as one digest message
+ * 4) once the scheduler is shut down, notifications are forwarded unchanged right away
+ * </pre>
+ */
+class MessageCoalescer {
+
+  private static final Logger LOG = Loggers.get(MessageCoalescer.class);
+
+  private final Consumer<PendingMessage> downstream;
+  private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler;
+
+  MessageCoalescer(Consumer<PendingMessage> downstream, ScheduledExecutorService scheduler) {
+    this.downstream = downstream;
+    this.scheduler = scheduler;
+  }
+
+  void add(PendingMessage message, long windowMs) {
+    String key = message.getBasePath() + '|' + message.getChannelToken();
+    while (true) {
+      Batch batch;
+      try {
+        batch = batches.computeIfAbsent(key, k -> {
+          Batch created = new Batch();
+          scheduler.schedule(() -> flush(k), windowMs, TimeUnit.MILLISECONDS);
+          return created;
+        });
+      } catch (RejectedExecutionException e) {
+        LOG.debug("Delivery stopping, not batching {}", message);
+        downstream.accept(message);
+        return;
+      }
+      if (batch.add(message)) {
+        return;
+      }
+      // lost the race against the flush of this batch, open a new one
+    }
+  }
+
+  /**
+   * Forwards all open batches immediately.
+   */
+  void close() {
+    batches.keySet().forEach(this::flush);
+  }
+
+  private void flush(String key) {
+    Batch batch = batches.remove(key);
+    if (batch == null) {
+      return;
+    }
+    List<PendingMessage> messages = batch.close();
+    if (messages.size() == 1) {
+      downstream.accept(messages.get(0));
+    } else {
+      LOG.info("Merging {} notifications into one digest", messages.size());
+      downstream.accept(digest(messages));
+    }
+  }
+
+  static PendingMessage digest(List<PendingMessage> messages) {
+    PendingMessage first = messages.get(0);
+    boolean needPush = false;
+    Priority priority = Priority.LOW;
+    StringBuilder content = new StringBuilder();
+    int included = 0;
+    for (PendingMessage message : messages) {
+      needPush |= Boolean.TRUE.equals(message.getBody().getNeedPush());
+      priority = priority.max(message.getPriority());
+      String line = message.getSummary() + "\n";
+      int remaining = messages.size() - included - 1;
+      String more = remaining > 0 ? "... and " + remaining + " more\n" : "";
+      if (content.length() + line.length() + more.length() > PendingMessage.MAX_CONTENT_LENGTH) {
+        content.append("... and ").append(messages.size() - included).append(" more\n");
+        break;
+      }
+      content.append(line);
+      included++;
+    }
+
+    MessagePushRequest body = new MessagePushRequest();
+    long failed = countStatus(messages, QualityGate.Status.ERROR);
+    long warned = countStatus(messages, QualityGate.Status.WARN);
+    String title = messages.size() + " analyses: " + failed + " failed" + (warned > 0 ? ", " + warned + " warned" : "");
+    body.setTitle(title.length() > PendingMessage.MAX_TITLE_LENGTH ? title.substring(0, PendingMessage.MAX_TITLE_LENGTH) : title);
+    body.setContent(content.length() > PendingMessage.MAX_CONTENT_LENGTH ? content.substring(0, PendingMessage.MAX_CONTENT_LENGTH) : content.toString());
+    body.setNeedPush(needPush);
+    PendingMessage digest = new PendingMessage(first.getProjectKey(), first.getChannelToken(),
+        first.getBasePath(), body, title, priority);
+    digest.setOutboxIds(messages.stream()
+        .flatMapToLong(m -> Arrays.stream(m.getOutboxIds()))
+        .toArray());
+    return digest;
+  }
+
+  /**
+   * @return how many of messages are about a Quality Gate with status, their title being that status
+   */
+  private static long countStatus(List<PendingMessage> messages, QualityGate.Status status) {
+    return messages.stream()
+        .filter(m -> status.name().equals(m.getBody().getTitle()))
+        .count();
+  }
+
+  private static class Batch {
+
+    private final List<PendingMessage> messages = new ArrayList<>();
+    private boolean closed;
+
+    private synchronized boolean add(PendingMessage message) {
+      if (closed) {
+        return false;
+      }
+      messages.add(message);
+      return true;
+    }
+
+    private synchronized List<PendingMessage> close() {
+      closed = true;
+      return messages;
+    }
+  }
+}
@@ -0,0 +1,273 @@
+package com.dadapush.client.sonar;
+
+import java.text.DecimalFormat;
+import java.util.List;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask.ProjectAnalysis;
+import org.sonar.api.ce.posttask.QualityGate;
+
+/**
+ * Renders the notification title and content of an analysis.
+ * <pre>
+ * 1) the content is produced by a precompiled {@link MessageTemplate}
+ * 2) everything is written into the {@link MessageBuffer} of the calling thread, no intermediate strings per condition
+ * 3) rendering stops as soon as {@link PendingMessage#MAX_CONTENT_LENGTH} characters are written
+ * 4) metric names and value formats (percentage, rating, duration) come from the {@link MetricCache}
+ * 5) conditions are parsed once into {@link EvaluatedCondition}s and rendered failed ones first
+ * 6) given the {@link ProjectState} of the previous notification, only conditions which changed are rendered
+ * </pre>
+ * Safe to be called by several threads at once, formatters are confined to the calling thread.
+ */
+class MessageRenderer {
+
+  private static final ThreadLocal<DecimalFormat> PERCENTAGE_FORMAT = ThreadLocal.withInitial(() -> {
+    DecimalFormat format = new DecimalFormat();
+    format.setMaximumFractionDigits(2);
+    return format;
+  });
+
+  /**
+   * SonarQube counts technical debt in days of 8 hours.
+   */
+  private static final long MINUTES_PER_DAY = 8 * 60L;
+
+  private final MetricCache metricCache;
+
+  MessageRenderer(MetricCache metricCache) {
+    this.metricCache = metricCache;
+  }
+
+  String renderTitle(QualityGate qualityGate) {
+    String title = qualityGate != null ? qualityGate.getStatus().name() : "Unknown Status";
+    return title.length() > PendingMessage.MAX_TITLE_LENGTH
+        ? title.substring(0, PendingMessage.MAX_TITLE_LENGTH) : title;
+  }
+
+  String renderContent(MessageTemplate template, ProjectAnalysis analysis, ProjectConfig projectConfig,
+      String sonarServerUrl) {
+    return renderContent(template, analysis, projectConfig, sonarServerUrl,
+        EvaluatedCondition.of(analysis.getQualityGate(), metricCache), null);
+  }
+
+  /**
+   * @param conditions the conditions of the analysis, see {@link EvaluatedCondition#of(QualityGate, MetricCache)}
+   * @param previous the state of the previous notification, null to render all conditions
+   */
+  String renderContent(MessageTemplate template, ProjectAnalysis analysis, ProjectConfig projectConfig,
+      String sonarServerUrl, List<EvaluatedCondition> conditions, ProjectState previous) {
+    MessageBuffer buffer = MessageBuffer.forCurrentThread(PendingMessage.MAX_CONTENT_LENGTH);
+    QualityGate qualityGate = analysis.getQualityGate();
+    template.render((variable, out) -> {
+      switch (variable) {
+        case PROJECT_NAME:
+          out.append(analysis.getProject().getName());
+          break;
+        case PROJECT_KEY:
+          out.append(analysis.getProject().getKey());
+          break;
+        case PROJECT_URL:
+          if (sonarServerUrl != null) {
+            out.append(sonarServerUrl).append("dashboard?id=").append(analysis.getProject().getKey());
+          }
+          break;
+        case STATUS:
+          out.append(qualityGate != null ? qualityGate.getStatus().name() : "Unknown");
+          break;
+        case CONDITIONS:
+          if (qualityGate == null) {
+            return false;
+          }
+          if (previous == null) {
+            appendConditions(conditions, projectConfig.isQgFailOnly(), out);
+          } else {
+            appendChanges(conditions, previous, projectConfig.isQgFailOnly(), out);
+          }
+          break;
+        default:
+          break;
+      }
+      return true;
+    }, buffer);
+    return buffer.toString();
+  }
+
+  private void appendConditions(List<EvaluatedCondition> conditions, boolean qgFailOnly, MessageBuffer out) {
+    boolean first = true;
+    for (EvaluatedCondition condition : conditions) {
+      if (out.isFull()) {
+        return;
+      }
+      if (qgFailOnly && !condition.isFailed()) {
+        continue;
+      }
+      if (!first) {
+        out.append('\n');
+      }
+      first = false;
+      appendCondition(condition, out);
+    }
+  }
+
+  /**
+   * Renders new conditions, conditions whose status or value changed and removed conditions. Each condition is
+   * looked up in previous at its own position first, so this is O(conditions) as long as the Quality Gate is stable.
+   */
+  private void appendChanges(List<EvaluatedCondition> conditions, ProjectState previous, boolean qgFailOnly,
+      MessageBuffer out) {
+    boolean[] matched = new boolean[previous.size()];
+    boolean first = true;
+    for (int i = 0; i < conditions.size() && !out.isFull(); i++) {
+      EvaluatedCondition condition = conditions.get(i);
+      int index = previous.indexOf(condition.getMetric().getKey(), i);
+      if (index >= 0) {
+        matched[index] = true;
+        if (previous.isUnchanged(index, condition)) {
+          continue;
+        }
+      } else if (qgFailOnly && !condition.isFailed()) {
+        continue;
+      }
+      if (!first) {
+        out.append('\n');
+      }
+      first = false;
+      if (index >= 0) {
+        appendCondition(condition, previous, index, out);
+      } else {
+        appendCondition(condition, out);
+      }
+    }
+    for (int i = 0; i < matched.length && !out.isFull(); i++) {
+      if (!matched[i]) {
+        if (!first) {
+          out.append('\n');
+        }
+        first = false;
+        out.append(metricCache.get(previous.getMetricKey(i)).getName()).append(": removed");
+      }
+    }
+    if (first) {
+      out.append("No condition changed since the previous analysis");
+    }
+  }
+
+  private void appendCondition(EvaluatedCondition condition, MessageBuffer out) {
+    appendCondition(condition, null, -1, out);
+  }
+
+  /**
+   * @param previous state holding the previous status and value of condition at index, null if there is none
+   */
+  private void appendCondition(EvaluatedCondition condition, ProjectState previous, int index,
+      MessageBuffer out) {
+    MetricDescriptor metric = condition.getMetric();
+    out.append(metric.getName());
+
+    if (!condition.hasValue()) {
+      // No value for given metric
+      out.append('\n');
+      if (previous != null) {
+        out.append(previous.getStatus(index).name()).append(" -> ");
+      }
+      out.append(condition.getStatus().name());
+      return;
+    }
+    out.append(": ");
+    if (previous != null && previous.getStatus(index) != condition.getStatus()) {
+      out.append(previous.getStatus(index).name()).append(" -> ");
+    }
+    out.append(condition.getStatus().name()).append('\n');
+    out.append("value: ");
+    if (previous != null && previous.getStatus(index) != QualityGate.EvaluationStatus.NO_VALUE
+        && !previous.hasSameValue(index, condition)) {
+      appendValue(previous.getValue(index), previous.getRawValue(index), metric.getFormat(), out);
+      out.append(" -> ");
+    }
+    appendValue(condition.getValue(), condition.getRawValue(), metric.getFormat(), out);
+    if (condition.getRawWarningThreshold() != null) {
+      out.append(", warning if ");
+      appendValueOperatorPrefix(condition.getOperator(), out);
+      appendFormatted(condition.getWarningThreshold(), condition.getRawWarningThreshold(), metric.getFormat(), out);
+    }
+    if (condition.getRawErrorThreshold() != null) {
+      out.append(", error if ");
+      appendValueOperatorPrefix(condition.getOperator(), out);
+      appendFormatted(condition.getErrorThreshold(), condition.getRawErrorThreshold(), metric.getFormat(), out);
+    }
+  }
+
+  private static void appendValue(double value, String raw, MetricDescriptor.Format format, MessageBuffer out) {
+    if ("".equals(raw)) {
+      out.append("NaN");
+    } else {
+      appendFormatted(value, raw, format, out);
+    }
+  }
+
+  /**
+   * @param value the parsed raw value, NaN if it is not numeric
+   */
+  private static void appendFormatted(double value, String raw, MetricDescriptor.Format format, MessageBuffer out) {
+    if (format == MetricDescriptor.Format.PLAIN || Double.isNaN(value)) {
+      out.append(raw);
+      return;
+    }
+    switch (format) {
+      case PERCENT:
+        out.append(PERCENTAGE_FORMAT.get().format(value)).append('%');
+        break;
+      case RATING:
+        appendRating(value, raw, out);
+        break;
+      case DURATION:
+        appendDuration(Math.round(value), out);
+        break;
+      default:
+        out.append(raw);
+        break;
+    }
+  }
+
+  private static void appendRating(double rating, String value, MessageBuffer out) {
+    long rounded = Math.round(rating);
+    if (rounded >= 1 && rounded <= 5) {
+      out.append((char) ('A' + rounded - 1));
+    } else {
+      out.append(value);
+    }
+  }
+
+  private static void appendDuration(long minutes, MessageBuffer out) {
+    long days = minutes / MINUTES_PER_DAY;
+    long hours = minutes % MINUTES_PER_DAY / 60;
+    long remainder = minutes % 60;
+    boolean empty = true;
+    if (days != 0) {
+      out.append(Long.toString(days)).append('d');
+      empty = false;
+    }
+    if (hours != 0) {
+      out.append(empty ? "" : " ").append(Long.toString(hours)).append('h');
+      empty = false;
+    }
+    if (remainder != 0 || empty) {
+      out.append(empty ? "" : " ").append(Long.toString(remainder)).append("min");
+    }
+  }
+
+  private static void appendValueOperatorPrefix(QualityGate.Operator operator, MessageBuffer out) {
+    switch (operator) {
+      case EQUALS:
+        out.append("==");
+        break;
+      case NOT_EQUALS:
+        out.append("!=");
+        break;
+      case GREATER_THAN:
+        out.append(">");
+        break;
+      case LESS_THAN:
+        out.append("<");
+        break;
+    }
+  }
+}
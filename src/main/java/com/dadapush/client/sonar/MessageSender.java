@@ -0,0 +1,133 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.ApiClient;
+import com.dadapush.client.ApiException;
+import com.dadapush.client.ApiResponse;
+import com.dadapush.client.api.DaDaPushMessageApi;
+import com.dadapush.client.model.ResultOfMessagePushResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import okhttp3.Call;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Performs the actual HTTP call to DaDaPush. Called from the {@link NotificationDispatcher} worker
+ * threads, never from the Compute Engine worker.
+ * <pre>
+ * 1) the call is built by the generated {@link ApiClient} like {@link DaDaPushMessageApi#createMessage} does, so its
+ *    default headers apply, but with the {@link Payload} bytes serialized once per message instead of once per call
+ * 2) with {@link DaDaPushNotificationProp#HTTP_GZIP} the body is sent gzip compressed
+ * 3) a compressed body answered with HTTP 415 or 400 is sent again uncompressed, and if that is accepted the base
+ *    path gets uncompressed bodies from then on
+ * </pre>
+ */
+@SuppressWarnings("deprecation")
+class MessageSender {
+
+  private static final Logger LOG = Loggers.get(MessageSender.class);
+
+  /**
+   * Path and channel header of {@link DaDaPushMessageApi#createMessage}.
+   */
+  static final String MESSAGE_PATH = "/api/v1/message";
+  static final String CHANNEL_TOKEN_HEADER = "x-channel-token";
+
+  private static final String JSON_CONTENT_TYPE = "application/json";
+  private static final int BAD_REQUEST = 400;
+  private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+  private final Settings settings;
+  private final ApiClientHolder apiClientHolder;
+  private final NotificationStats stats;
+  private final Set<String> gzipUnsupported = ConcurrentHashMap.newKeySet();
+
+  MessageSender(Settings settings, ApiClientHolder apiClientHolder, NotificationStats stats) {
+    this.settings = settings;
+    this.apiClientHolder = apiClientHolder;
+    this.stats = stats;
+  }
+
+  /**
+   * Drops the API client, it is built again by the next send.
+   */
+  void release() {
+    apiClientHolder.release();
+    gzipUnsupported.clear();
+  }
+
+  DeliveryResult send(PendingMessage message, RetryPolicy retryPolicy) {
+    ApiClient apiClient = apiClientHolder.get(message.getBasePath());
+    byte[] json = message.getPayload().getJson(apiClient.getJSON(), stats);
+    byte[] gzipped = settings.getBoolean(DaDaPushNotificationProp.HTTP_GZIP.property())
+        && !gzipUnsupported.contains(message.getBasePath()) ? message.getPayload().getGzipped() : null;
+    ResultOfMessagePushResponse result;
+    long start = System.nanoTime();
+    try {
+      result = post(apiClient, message, json, gzipped);
+      stats.httpLatency().recordSince(start);
+    } catch (ApiException e) {
+      stats.httpLatency().recordSince(start);
+      DeliveryResult failure = retryPolicy.classify(e);
+      LOG.warn("send DaDaPush Notification fail ({}), {}: {} {}", failure, message, e.getCode(),
+          e.getMessage());
+      return failure;
+    }
+    if (result.getCode() == 0) {
+      LOG.info("send notification success, messageId=" + result.getData().getMessageId());
+      return DeliveryResult.DELIVERED;
+    }
+    DeliveryResult failure = retryPolicy.classify(result.getCode());
+    LOG
+        .warn("send DaDaPush Notification fail (" + failure + "), detail: " + result.getCode() + " "
+            + result.getErrmsg());
+    return failure;
+  }
+
+  /**
+   * @param gzipped compressed json, null to send it uncompressed
+   */
+  private ResultOfMessagePushResponse post(ApiClient apiClient, PendingMessage message, byte[] json,
+      byte[] gzipped) throws ApiException {
+    String channelToken = Objects.requireNonNull(message.getChannelToken());
+    if (gzipped == null) {
+      return execute(apiClient, channelToken, json.length, json, false);
+    }
+    try {
+      return execute(apiClient, channelToken, json.length, gzipped, true);
+    } catch (ApiException e) {
+      if (e.getCode() != UNSUPPORTED_MEDIA_TYPE && e.getCode() != BAD_REQUEST) {
+        throw e;
+      }
+      // a request rejected uncompressed as well was not rejected for its compression
+      ResultOfMessagePushResponse result = execute(apiClient, channelToken, json.length, json, false);
+      if (gzipUnsupported.add(message.getBasePath())) {
+        LOG.info("DaDaPush at {} does not accept compressed requests ({}), sending them uncompressed",
+            message.getBasePath(), e.getCode());
+      }
+      return result;
+    }
+  }
+
+  private ResultOfMessagePushResponse execute(ApiClient apiClient, String channelToken, int jsonLength,
+      byte[] body, boolean gzipped) throws ApiException {
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Accept", JSON_CONTENT_TYPE);
+    headers.put("Content-Type", JSON_CONTENT_TYPE);
+    headers.put(CHANNEL_TOKEN_HEADER, channelToken);
+    if (gzipped) {
+      headers.put("Content-Encoding", "gzip");
+    }
+    // a byte[] body is sent as is by the generated client
+    Call call = apiClient.buildCall(MESSAGE_PATH, "POST", new ArrayList<>(), new ArrayList<>(), body, headers,
+        new HashMap<>(), new HashMap<>(), new String[0], null);
+    stats.payloadSent(jsonLength, body.length);
+    ApiResponse<ResultOfMessagePushResponse> response = apiClient.execute(call, ResultOfMessagePushResponse.class);
+    return response.getData();
+  }
+}
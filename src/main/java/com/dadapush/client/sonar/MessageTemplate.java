@@ -0,0 +1,120 @@
+package com.dadapush.client.sonar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notification content template, compiled once into a list of literal and variable segments.
+ * <pre>
+ * ${project.name}  name of the analyzed project
+ * ${project.key}   key of the analyzed project
+ * ${project.url}   dashboard url of the project, empty if the server base URL is not set
+ * ${status}        Quality Gate status
+ * ${conditions}    Quality Gate conditions, one per line, only changed ones with {@link DaDaPushNotificationProp#DELTA_ENABLED}
+ * </pre>
+ * Unknown variables are kept as they are. A variable without any value, like ${conditions} of an analysis without
+ * Quality Gate, also drops the line break right after it, so the {@link #DEFAULT} template renders the same text as
+ * the notifications built before templates existed. Instances are immutable and can be shared between threads.
+ */
+final class MessageTemplate {
+
+  static final String DEFAULT = "Project: ${project.name}\nStatus: ${status}\n${conditions}\n";
+
+  enum Variable {
+    PROJECT_NAME("project.name"),
+    PROJECT_KEY("project.key"),
+    PROJECT_URL("project.url"),
+    STATUS("status"),
+    CONDITIONS("conditions");
+
+    private final String placeholder;
+
+    Variable(String name) {
+      this.placeholder = "${" + name + "}";
+    }
+  }
+
+  /**
+   * Receives the value of each variable while rendering.
+   */
+  interface Values {
+
+    /**
+     * @return false if variable has no value at all
+     */
+    boolean append(Variable variable, MessageBuffer buffer);
+  }
+
+  private final String source;
+  private final List<Object> segments;
+
+  private MessageTemplate(String source, List<Object> segments) {
+    this.source = source;
+    this.segments = Collections.unmodifiableList(segments);
+  }
+
+  static MessageTemplate compile(String source) {
+    List<Object> segments = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while (i < source.length()) {
+      Variable variable = variableAt(source, i);
+      if (variable == null) {
+        literal.append(source.charAt(i));
+        i++;
+        continue;
+      }
+      if (literal.length() > 0) {
+        segments.add(literal.toString());
+        literal.setLength(0);
+      }
+      segments.add(variable);
+      i += variable.placeholder.length();
+    }
+    if (literal.length() > 0) {
+      segments.add(literal.toString());
+    }
+    return new MessageTemplate(source, segments);
+  }
+
+  private static Variable variableAt(String source, int index) {
+    if (source.charAt(index) != '$') {
+      return null;
+    }
+    for (Variable variable : Variable.values()) {
+      if (source.startsWith(variable.placeholder, index)) {
+        return variable;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Renders into buffer, stops as soon as the buffer is full.
+   */
+  void render(Values values, MessageBuffer buffer) {
+    boolean absent = false;
+    for (Object segment : segments) {
+      if (buffer.isFull()) {
+        return;
+      }
+      if (segment instanceof Variable) {
+        absent = !values.append((Variable) segment, buffer);
+      } else {
+        String literal = (String) segment;
+        buffer.append(absent && literal.charAt(0) == '\n' ? literal.substring(1) : literal);
+        absent = false;
+      }
+    }
+  }
+
+  String getSource() {
+    return source;
+  }
+
+  @Override
+  public String toString() {
+    return source;
+  }
+}
@@ -0,0 +1,95 @@
+package com.dadapush.client.sonar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.i18n.I18n;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+
+/**
+ * Caches the {@link MetricDescriptor} of Quality Gate condition metrics.
+ * <pre>
+ * 1) the display name is resolved through {@link I18n} only once per metric key
+ * 2) the value format is derived from the value type of the matching {@link CoreMetrics} metric, plugin metrics are rendered as is
+ * 3) nothing is resolved before the first notification, and the cache is cleared when the plugin gets disabled
+ * </pre>
+ * The cache holds at most {@link #MAX_SIZE} entries, descriptors of further metric keys are resolved every time.
+ */
+@ComputeEngineSide
+public class MetricCache implements Startable {
+
+  static final int MAX_SIZE = 1024;
+
+  private static final Map<String, Metric.ValueType> CORE_METRIC_TYPES;
+
+  static {
+    Map<String, Metric.ValueType> types = new HashMap<>();
+    for (Metric<?> metric : CoreMetrics.getMetrics()) {
+      types.put(metric.getKey(), metric.getType());
+    }
+    CORE_METRIC_TYPES = Collections.unmodifiableMap(types);
+  }
+
+  private final I18n i18n;
+  private final Map<String, MetricDescriptor> descriptors = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public MetricCache(I18n i18n) {
+    this.i18n = i18n;
+  }
+
+  @Override
+  public void start() {
+    // descriptors are resolved on first use
+  }
+
+  @Override
+  public void stop() {
+    clear();
+  }
+
+  /**
+   * Forgets all descriptors, they are resolved again on next use.
+   */
+  void clear() {
+    descriptors.clear();
+  }
+
+  MetricDescriptor get(String metricKey) {
+    MetricDescriptor descriptor = descriptors.get(metricKey);
+    if (descriptor != null) {
+      hits.increment();
+      return descriptor;
+    }
+    misses.increment();
+    descriptor = resolve(metricKey);
+    if (descriptors.size() < MAX_SIZE) {
+      descriptors.putIfAbsent(metricKey, descriptor);
+    }
+    return descriptor;
+  }
+
+  private MetricDescriptor resolve(String metricKey) {
+    String name = i18n.message(Locale.ENGLISH, "metric." + metricKey + ".name", metricKey);
+    return new MetricDescriptor(metricKey, name, MetricDescriptor.Format.of(CORE_METRIC_TYPES.get(metricKey)));
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+
+  int size() {
+    return descriptors.size();
+  }
+}
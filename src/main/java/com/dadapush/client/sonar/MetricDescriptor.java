@@ -0,0 +1,68 @@
+package com.dadapush.client.sonar;
+
+import org.sonar.api.measures.Metric;
+
+/**
+ * Display name and value format of a metric, resolved once per metric key by the {@link MetricCache}.
+ */
+final class MetricDescriptor {
+
+  enum Format {
+    PLAIN,
+    /**
+     * Rendered with at most 2 fraction digits and a '%' postfix.
+     */
+    PERCENT,
+    /**
+     * Rendered as letter, 1 is A, 5 is E.
+     */
+    RATING,
+    /**
+     * Work duration in minutes, rendered as days (of 8 hours), hours and minutes.
+     */
+    DURATION;
+
+    static Format of(Metric.ValueType type) {
+      if (type == null) {
+        return PLAIN;
+      }
+      switch (type) {
+        case PERCENT:
+          return PERCENT;
+        case RATING:
+          return RATING;
+        case WORK_DUR:
+          return DURATION;
+        default:
+          return PLAIN;
+      }
+    }
+  }
+
+  private final String key;
+  private final String name;
+  private final Format format;
+
+  MetricDescriptor(String key, String name, Format format) {
+    this.key = key;
+    this.name = name;
+    this.format = format;
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Format getFormat() {
+    return format;
+  }
+
+  @Override
+  public String toString() {
+    return key + "(" + name + ", " + format + ")";
+  }
+}
@@ -0,0 +1,181 @@
+package com.dadapush.client.sonar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last notification sent for every project branch or pull request, and channel.
+ * <pre>
+ * 1) a notification is fingerprinted by a 64 bit hash of its subject (see
+ *    {@link DaDaPushPostProjectAnalysisTask#getSubject}), title and content
+ * 2) {@link DedupMode#SUPPRESS_REPEATS} suppresses it if the last one had the same fingerprint
+ * 3) {@link DedupMode#STATUS_CHANGE} suppresses it if the last one had the same status
+ * 4) entries older than the TTL are ignored, so a reminder is sent at most once per TTL
+ * 5) checking and remembering a notification is one step, see {@link #checkAndRecord}, a notification the
+ *    dispatcher discards is forgotten again and does not suppress the next
+ * </pre>
+ * At most {@link #MAX_ENTRIES} entries are kept, the least recently used one is evicted first, so memory stays
+ * flat no matter how many projects are analyzed. Entries are spread by key over {@link #STRIPES} independently
+ * locked maps, so Compute Engine workers notifying different projects rarely wait for each other.
+ */
+class NotificationDeduplicator {
+
+  static final int MAX_ENTRIES = 10_000;
+  static final int STRIPES = 16;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  NotificationDeduplicator() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * @param status the Quality Gate status of the notification
+   * @param fingerprint see {@link #fingerprint(String...)}
+   * @return true if the last notification of subject sent to channelToken within ttlMs is repeated
+   */
+  boolean isRepeated(DedupMode mode, long ttlMs, long now, String subject, String channelToken, String status,
+      long fingerprint) {
+    if (mode == DedupMode.OFF) {
+      return false;
+    }
+    String key = subject + '|' + channelToken;
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      return isRepeated(mode, ttlMs, now, stripe.get(key), status, fingerprint);
+    }
+  }
+
+  /**
+   * Checks and remembers a notification in one step, so that Compute Engine workers notifying the same subject at
+   * the same time do not both send it. A notification which is then not accepted for delivery has to be passed to
+   * {@link #discarded}.
+   *
+   * @return false if the notification is repeated, see {@link #isRepeated}
+   */
+  boolean checkAndRecord(DedupMode mode, long ttlMs, long now, String subject, String channelToken, String status,
+      long fingerprint) {
+    if (mode == DedupMode.OFF) {
+      return true;
+    }
+    String key = subject + '|' + channelToken;
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      Sent last = stripe.get(key);
+      if (isRepeated(mode, ttlMs, now, last, status, fingerprint)) {
+        return false;
+      }
+      if (last != null) {
+        // only the last notification is restored by discarded
+        last.previous = null;
+      }
+      stripe.put(key, new Sent(fingerprint, status, now, last));
+      return true;
+    }
+  }
+
+  /**
+   * Forgets a notification recorded by {@link #checkAndRecord} which was not accepted for delivery, so that it
+   * does not suppress the next one. Does nothing if another notification was recorded in the meantime.
+   */
+  void discarded(DedupMode mode, long now, String subject, String channelToken, String status, long fingerprint) {
+    if (mode == DedupMode.OFF) {
+      return;
+    }
+    String key = subject + '|' + channelToken;
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      Sent last = stripe.get(key);
+      if (last == null || last.sentAt != now || last.fingerprint != fingerprint || !last.status.equals(status)) {
+        return;
+      }
+      if (last.previous == null) {
+        stripe.remove(key);
+      } else {
+        stripe.put(key, last.previous);
+      }
+    }
+  }
+
+  private static boolean isRepeated(DedupMode mode, long ttlMs, long now, Sent last, String status,
+      long fingerprint) {
+    if (last == null || now - last.sentAt >= ttlMs) {
+      return false;
+    }
+    return mode == DedupMode.STATUS_CHANGE ? last.status.equals(status) : last.fingerprint == fingerprint;
+  }
+
+  private Stripe stripeOf(String key) {
+    return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+  }
+
+  int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  void clear() {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        stripe.clear();
+      }
+    }
+  }
+
+  static long fingerprint(String... values) {
+    long hash = FNV_OFFSET_BASIS;
+    for (String value : values) {
+      if (value != null) {
+        for (int i = 0; i < value.length(); i++) {
+          hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+      }
+      // separator, so that ("ab", "c") and ("a", "bc") differ
+      hash = (hash ^ 0xffff) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * LRU map of one stripe, guarded by its own monitor.
+   */
+  private static class Stripe extends LinkedHashMap<String, Sent> {
+
+    private Stripe() {
+      super(32, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Sent> eldest) {
+      return size() > MAX_ENTRIES / STRIPES;
+    }
+  }
+
+  private static class Sent {
+
+    private final long fingerprint;
+    private final String status;
+    private final long sentAt;
+    /**
+     * The notification recorded before, restored if this one is discarded, guarded by the stripe.
+     */
+    private Sent previous;
+
+    private Sent(long fingerprint, String status, long sentAt, Sent previous) {
+      this.fingerprint = fingerprint;
+      this.status = status;
+      this.sentAt = sentAt;
+      this.previous = previous;
+    }
+  }
+}
@@ -0,0 +1,625 @@
+package com.dadapush.client.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Delivers notifications off the Compute Engine worker thread.
+ * <pre>
+ * 1) {@link #submit(PendingMessage)} only puts the prepared message into a bounded in-memory
+ *    {@link PriorityMessageQueue}, failed Quality Gates are taken first
+ * 2) a dispatcher thread takes messages from the queue and hands them to the {@link DeliveryExecutor}, which sends
+ *    them on virtual threads where available, on a small pool of platform threads otherwise
+ * 3) when the queue is full the configured {@link OverflowPolicy} decides what is discarded
+ * 4) on shutdown the queue is drained for at most {@link DaDaPushNotificationProp#DELIVERY_SHUTDOWN_TIMEOUT}
+ * </pre>
+ * Failed deliveries are rescheduled according to the {@link RetryPolicy}, and every base path has its own
+ * {@link CircuitBreaker} so that an unavailable endpoint is not called again and again. Waiting for an open
+ * breaker does not count as an attempt, a notification waits for at most
+ * {@link DaDaPushNotificationProp#CIRCUIT_MAX_DEFERRAL}.
+ * With {@link DaDaPushNotificationProp#RATE_LIMIT} set, every channel token has a {@link TokenBucket}, a notification
+ * finding it empty is queued again once a token is available, without counting as a failed attempt.
+ * If {@link DaDaPushNotificationProp#DELIVERY_BATCH_WINDOW} is set, notifications for the same channel are first
+ * collected by a {@link MessageCoalescer} and queued as one digest when the window closes.
+ * With {@link DaDaPushNotificationProp#OUTBOX_ENABLED}, every submitted notification is also written to the
+ * {@link Outbox} in the SonarQube data directory and acknowledged once it is done, so that undelivered notifications
+ * are sent after a restart.
+ * Queue, threads and the outbox are only set up for the first notification, or at startup if the outbox holds
+ * undelivered notifications, so an installed but disabled plugin costs nothing. {@link #release()} tears them down
+ * again when the plugin gets disabled: the released {@link Delivery} drains in the background, while the next
+ * notification already sets up a new one, which takes over the outbox. Changing their settings requires a restart.
+ */
+@ComputeEngineSide
+@SuppressWarnings("deprecation")
+public class NotificationDispatcher implements Startable {
+
+  private static final Logger LOG = Loggers.get(NotificationDispatcher.class);
+
+  private static final long POLL_INTERVAL_MS = 500L;
+  private static final long RATE_LIMITER_SWEEP_MS = 60_000L;
+  private static final String DATA_PATH_PROPERTY = "sonar.path.data";
+
+  private final Settings settings;
+  private final MessageSender sender;
+  private final NotificationStats stats;
+  private final Object lifecycleLock = new Object();
+
+  /**
+   * Null until the first notification, and again once released.
+   */
+  private volatile Delivery delivery;
+  /**
+   * The last released delivery while it drains, guarded by lifecycleLock.
+   */
+  private Delivery draining;
+  private boolean stopped;
+
+  public NotificationDispatcher(Settings settings, ApiClientHolder apiClientHolder,
+      NotificationStats stats) {
+    this(settings, new MessageSender(settings, apiClientHolder, stats), stats);
+  }
+
+  NotificationDispatcher(Settings settings, MessageSender sender, NotificationStats stats) {
+    this.settings = settings;
+    this.sender = sender;
+    this.stats = stats;
+  }
+
+  @Override
+  public void start() {
+    if (settings.getBoolean(DaDaPushNotificationProp.ENABLED.property())
+        && Outbox.hasEntries(getOutboxDirectory())) {
+      activate();
+    } else {
+      LOG.debug("DaDaPush delivery is started by the first notification");
+    }
+  }
+
+  /**
+   * Sets up queue, threads and outbox unless this is already done, or the Compute Engine is stopping.
+   *
+   * @return the running delivery, null if the Compute Engine is stopping
+   */
+  private Delivery activate() {
+    synchronized (lifecycleLock) {
+      if (delivery == null && !stopped) {
+        Delivery created = new Delivery();
+        created.start(takeOverOutbox(created));
+        delivery = created;
+      }
+      return delivery;
+    }
+  }
+
+  /**
+   * @return the outbox of the draining delivery, which will not close it anymore, null if there is none
+   */
+  private Outbox takeOverOutbox(Delivery successor) {
+    if (draining == null || !draining.ownsOutbox) {
+      return null;
+    }
+    draining.ownsOutbox = false;
+    successor.predecessor = draining;
+    return draining.outbox;
+  }
+
+  /**
+   * @return where the outbox is kept, null if it is disabled
+   */
+  private File getOutboxDirectory() {
+    if (!settings.getBoolean(DaDaPushNotificationProp.OUTBOX_ENABLED.property())) {
+      return null;
+    }
+    String dataPath = settings.getString(DATA_PATH_PROPERTY);
+    if (dataPath == null) {
+      LOG.warn("{} is not set, DaDaPush outbox disabled", DATA_PATH_PROPERTY);
+      return null;
+    }
+    return new File(new File(dataPath, "dadapush"), "outbox");
+  }
+
+  private Outbox openOutbox(List<PendingMessage> recovered) {
+    File directory = getOutboxDirectory();
+    if (directory == null) {
+      return null;
+    }
+    try {
+      return Outbox.open(directory, channelTokens()::get, recovered);
+    } catch (IOException e) {
+      LOG.error("Failed to open DaDaPush outbox in " + directory + ", notifications will not survive a restart", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the configured channel tokens by their {@link Outbox#channelReference(String)}
+   */
+  private Map<String, String> channelTokens() {
+    Map<String, String> tokens = new HashMap<>();
+    try {
+      for (String token : ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY).getChannelTokens()) {
+        tokens.put(Outbox.channelReference(token), token);
+      }
+    } catch (MessageException e) {
+      LOG.warn("Failed to read DaDaPush channels, undelivered notifications can not be recovered: {}",
+          e.getMessage());
+    }
+    return tokens;
+  }
+
+  @Override
+  public void stop() {
+    Delivery stopping;
+    Delivery released;
+    synchronized (lifecycleLock) {
+      stopped = true;
+      stopping = delivery;
+      delivery = null;
+      released = draining;
+    }
+    if (stopping != null) {
+      finish(stopping);
+    }
+    if (released != null) {
+      released.awaitFinished();
+    }
+  }
+
+  /**
+   * Drains and tears down queue, threads and outbox in the background, and drops the API client. They are set up
+   * again by the next notification, which does not wait for the drain.
+   */
+  public void release() {
+    Delivery released;
+    synchronized (lifecycleLock) {
+      released = delivery;
+      if (released == null) {
+        return;
+      }
+      delivery = null;
+      draining = released;
+    }
+    Thread releaser = new Thread(() -> {
+      finish(released);
+      LOG.info("DaDaPush delivery released");
+    }, "dadapush-release");
+    releaser.setDaemon(true);
+    releaser.start();
+  }
+
+  /**
+   * Drains retired, then closes its outbox and drops the API client unless a newer delivery uses them. An outbox
+   * taken over is only closed once the delivery it was taken from is finished too.
+   */
+  private void finish(Delivery retired) {
+    retired.drain();
+    if (retired.predecessor != null) {
+      retired.predecessor.awaitFinished();
+      retired.predecessor = null;
+    }
+    synchronized (lifecycleLock) {
+      if (retired.ownsOutbox && retired.outbox != null) {
+        retired.outbox.close();
+      }
+      retired.ownsOutbox = false;
+      if (draining == retired) {
+        draining = null;
+      }
+      if (delivery == null && draining == null && !stopped) {
+        sender.release();
+      }
+    }
+    retired.finished.countDown();
+  }
+
+  /**
+   * Queues a notification for delivery. Returns immediately unless {@link OverflowPolicy#BLOCK} is
+   * configured and the queue is full.
+   *
+   * @return false if the notification was discarded
+   */
+  public boolean submit(PendingMessage message) {
+    // a release between reading the delivery and submitting to it rejects the message, the next delivery takes it
+    for (int attempt = 0; attempt < 2; attempt++) {
+      Delivery current = delivery;
+      if (current == null || !current.running) {
+        current = activate();
+      }
+      if (current == null) {
+        break;
+      }
+      Lock accepting = current.acceptLock.readLock();
+      accepting.lock();
+      try {
+        if (current.running) {
+          return current.submit(message);
+        }
+      } finally {
+        accepting.unlock();
+      }
+    }
+    LOG.warn("DaDaPush delivery is not running, dropping {}", message);
+    stats.dropped();
+    return false;
+  }
+
+  int getQueueSize() {
+    Delivery current = delivery;
+    return current == null ? 0 : current.queue.size();
+  }
+
+  /**
+   * Queue, threads and outbox of one activation.
+   */
+  private class Delivery {
+
+    private final PriorityMessageQueue queue;
+    private final DeliveryExecutor deliveryExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final MessageCoalescer coalescer;
+    private final Thread dispatchThread;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    /**
+     * Messages waiting in the scheduler to be queued again.
+     */
+    private final Set<PendingMessage> scheduled = ConcurrentHashMap.newKeySet();
+    /**
+     * Held for reading while a notification is submitted, for writing to stop running, so that no notification is
+     * submitted once the delivery drains.
+     */
+    private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+    /**
+     * The delivery whose outbox this one took over, while it may still be draining.
+     */
+    private volatile Delivery predecessor;
+    private volatile Outbox outbox;
+    private volatile boolean running;
+    /**
+     * False once a newer delivery took over the outbox, guarded by lifecycleLock.
+     */
+    private boolean ownsOutbox;
+
+    private Delivery() {
+      int capacity = Math.max(1, settings.getInt(DaDaPushNotificationProp.DELIVERY_QUEUE_CAPACITY.property()));
+      this.deliveryExecutor = DeliveryExecutor.create(
+          ExecutorMode.parse(settings.getString(DaDaPushNotificationProp.DELIVERY_EXECUTOR.property())),
+          settings.getInt(DaDaPushNotificationProp.DELIVERY_WORKERS.property()),
+          settings.getInt(DaDaPushNotificationProp.DELIVERY_MAX_IN_FLIGHT.property()));
+      LOG.info("Starting DaDaPush delivery with queue capacity {} on {}", capacity, deliveryExecutor);
+      this.queue = new PriorityMessageQueue(capacity,
+          settings.getLong(DaDaPushNotificationProp.PRIORITY_AGING.property()));
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dadapush-scheduler");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.coalescer = new MessageCoalescer(this::enqueue, scheduler);
+      this.dispatchThread = new Thread(this::dispatchLoop, "dadapush-dispatch");
+      dispatchThread.setDaemon(true);
+    }
+
+    /**
+     * @param takenOver the outbox of the previous delivery, null to open it and recover what it holds
+     */
+    private void start(Outbox takenOver) {
+      stats.setQueueDepthSupplier(NotificationDispatcher.this::getQueueSize);
+      scheduler.scheduleWithFixedDelay(this::sweepRateLimiters, RATE_LIMITER_SWEEP_MS, RATE_LIMITER_SWEEP_MS,
+          TimeUnit.MILLISECONDS);
+      List<PendingMessage> recovered = new ArrayList<>();
+      this.outbox = takenOver != null ? takenOver : openOutbox(recovered);
+      this.ownsOutbox = outbox != null;
+      if (outbox != null) {
+        outbox.scheduleSync(scheduler, settings.getLong(DaDaPushNotificationProp.OUTBOX_SYNC_INTERVAL.property()));
+      }
+      this.running = true;
+      dispatchThread.start();
+      recovered.forEach(this::enqueue);
+    }
+
+    /**
+     * Stops taking notifications and waits for the queued ones to be delivered.
+     */
+    private void drain() {
+      Lock accepting = acceptLock.writeLock();
+      accepting.lock();
+      try {
+        running = false;
+      } finally {
+        accepting.unlock();
+      }
+      scheduler.shutdownNow();
+      // retries and deferrals which were still waiting
+      for (PendingMessage message : scheduled) {
+        if (scheduled.remove(message)) {
+          abandon(message);
+        }
+      }
+      coalescer.close();
+      long timeout = settings.getLong(DaDaPushNotificationProp.DELIVERY_SHUTDOWN_TIMEOUT.property());
+      long deadline = System.currentTimeMillis() + timeout;
+      try {
+        // the dispatch thread ends once the queue is drained
+        dispatchThread.join(Math.max(1L, timeout));
+        deliveryExecutor.shutdown();
+        if (dispatchThread.isAlive()
+            || !deliveryExecutor.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()))) {
+          LOG.warn("DaDaPush delivery did not drain within {} ms, {} notification(s) dropped", timeout,
+              queue.size());
+          dispatchThread.interrupt();
+          deliveryExecutor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        dispatchThread.interrupt();
+        deliveryExecutor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void awaitFinished() {
+      long timeout = settings.getLong(DaDaPushNotificationProp.DELIVERY_SHUTDOWN_TIMEOUT.property());
+      try {
+        if (!finished.await(Math.max(1L, timeout), TimeUnit.MILLISECONDS)) {
+          LOG.warn("Released DaDaPush delivery did not drain within {} ms", timeout);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Called with acceptLock held for reading, while running.
+     */
+    private boolean submit(PendingMessage message) {
+      if (outbox != null) {
+        try {
+          outbox.append(message);
+        } catch (IOException e) {
+          LOG.warn("Failed to write notification to outbox, it will not survive a restart", e);
+        }
+      }
+      long batchWindow = settings.getLong(DaDaPushNotificationProp.DELIVERY_BATCH_WINDOW.property());
+      if (batchWindow > 0) {
+        coalescer.add(message, batchWindow);
+        return true;
+      }
+      return enqueue(message);
+    }
+
+    private boolean enqueue(PendingMessage message) {
+      if (queue.offer(message)) {
+        return true;
+      }
+      OverflowPolicy policy = OverflowPolicy.parse(
+          settings.getString(DaDaPushNotificationProp.DELIVERY_OVERFLOW_POLICY.property()));
+      switch (policy) {
+        case DROP_OLDEST:
+          while (!queue.offer(message)) {
+            PendingMessage dropped = queue.evict(message.getPriority());
+            if (dropped == null) {
+              // everything queued is more important than message
+              break;
+            }
+            LOG.warn("DaDaPush delivery queue full, dropping oldest {}", dropped);
+            stats.dropped();
+            done(dropped);
+          }
+          if (queue.offer(message)) {
+            return true;
+          }
+          break;
+        case BLOCK:
+          long timeout = settings.getLong(DaDaPushNotificationProp.DELIVERY_BLOCK_TIMEOUT.property());
+          try {
+            if (queue.offer(message, timeout, TimeUnit.MILLISECONDS)) {
+              return true;
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          break;
+        case DROP_NEWEST:
+        default:
+          break;
+      }
+      LOG.warn("DaDaPush delivery queue full, dropping {}", message);
+      stats.dropped();
+      done(message);
+      return false;
+    }
+
+    /**
+     * The message was delivered or given up, it must not be recovered after a restart.
+     */
+    private void done(PendingMessage message) {
+      if (outbox != null && message.getOutboxIds().length > 0) {
+        outbox.ack(message.getOutboxIds());
+      }
+    }
+
+    private void dispatchLoop() {
+      while (running || !queue.isEmpty()) {
+        PendingMessage message;
+        try {
+          message = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+          if (message != null) {
+            deliveryExecutor.execute(() -> deliverQuietly(message));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    private void deliverQuietly(PendingMessage message) {
+      try {
+        deliver(message);
+      } catch (RuntimeException e) {
+        LOG.error("send DaDaPush Notification fail, " + message, e);
+      }
+    }
+
+    private void deliver(PendingMessage message) {
+      long rateLimitWait = acquireRateLimit(message);
+      if (rateLimitWait > 0) {
+        LOG.debug("Rate limit of channel reached, delaying {} by {} ms", message, rateLimitWait);
+        stats.rateLimited();
+        enqueueLater(message, rateLimitWait);
+        return;
+      }
+      RetryPolicy retryPolicy = RetryPolicy.create(settings);
+      int failureThreshold = settings.getInt(DaDaPushNotificationProp.CIRCUIT_FAILURE_THRESHOLD.property());
+      long openDuration = settings.getLong(DaDaPushNotificationProp.CIRCUIT_OPEN_DURATION.property());
+      CircuitBreaker circuitBreaker = circuitBreakers
+          .computeIfAbsent(String.valueOf(message.getBasePath()), CircuitBreaker::new);
+
+      long now = System.currentTimeMillis();
+      long wait = circuitBreaker.acquire(now, openDuration);
+      if (wait > 0) {
+        deferLater(message, now, wait);
+        return;
+      }
+      int attempts = message.incrementAttempts();
+      DeliveryResult result;
+      try {
+        result = sender.send(message, retryPolicy);
+      } catch (RuntimeException e) {
+        // e.g. an unexpected answer, handled like a transport error so the breaker and the retries move on
+        LOG.error("send DaDaPush Notification fail, " + message, e);
+        result = DeliveryResult.RETRYABLE_FAILURE;
+      }
+      switch (result) {
+        case RETRYABLE_FAILURE:
+          circuitBreaker.onFailure(System.currentTimeMillis(), failureThreshold, openDuration);
+          retryLater(message, retryPolicy, attempts, retryPolicy.backoffMs(attempts));
+          break;
+        case PERMANENT_FAILURE:
+          stats.failed();
+          // the endpoint answered, so it is available
+          circuitBreaker.onSuccess();
+          done(message);
+          break;
+        case DELIVERED:
+        default:
+          stats.sent();
+          circuitBreaker.onSuccess();
+          done(message);
+          break;
+      }
+    }
+
+    private void retryLater(PendingMessage message, RetryPolicy retryPolicy, int attempts,
+        long delayMs) {
+      if (!retryPolicy.canRetry(attempts)) {
+        LOG.error("Giving up DaDaPush Notification after {} attempt(s), {}", attempts, message);
+        stats.givenUp();
+        done(message);
+        return;
+      }
+      if (!running) {
+        abandon(message);
+        return;
+      }
+      LOG.info("Retrying DaDaPush Notification in {} ms, {}", delayMs, message);
+      stats.retried();
+      enqueueLater(message, delayMs);
+    }
+
+    /**
+     * Puts message back until the circuit breaker of its base path lets it through, without counting an attempt.
+     */
+    private void deferLater(PendingMessage message, long now, long delayMs) {
+      long maxDeferral = settings.getLong(DaDaPushNotificationProp.CIRCUIT_MAX_DEFERRAL.property());
+      long deferredSince = message.defer(now);
+      if (now - deferredSince >= maxDeferral) {
+        LOG.error("Giving up DaDaPush Notification after waiting {} ms for the circuit breaker, {}",
+            now - deferredSince, message);
+        stats.givenUp();
+        done(message);
+        return;
+      }
+      if (!running) {
+        abandon(message);
+        return;
+      }
+      long delay = Math.min(delayMs, deferredSince + maxDeferral - now);
+      LOG.debug("Circuit breaker open, delaying {} by {} ms", message, delay);
+      enqueueLater(message, delay);
+    }
+
+    private void enqueueLater(PendingMessage message, long delayMs) {
+      scheduled.add(message);
+      try {
+        scheduler.schedule(() -> {
+          if (scheduled.remove(message)) {
+            enqueue(message);
+          }
+        }, delayMs, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        if (scheduled.remove(message)) {
+          abandon(message);
+        }
+      }
+    }
+
+    /**
+     * The delivery stops before message is done: it stays in the outbox for the next start if there is one,
+     * otherwise it is lost.
+     */
+    private void abandon(PendingMessage message) {
+      if (outbox != null) {
+        LOG.warn("DaDaPush delivery stopping, {} will be retried after restart", message);
+      } else {
+        LOG.warn("DaDaPush delivery stopping, dropping {}", message);
+        stats.dropped();
+      }
+    }
+
+    /**
+     * @return 0 if message may be sent now, otherwise how long it has to wait for its channel's rate limit
+     */
+    private long acquireRateLimit(PendingMessage message) {
+      int ratePerMinute = settings.getInt(DaDaPushNotificationProp.RATE_LIMIT.property());
+      if (ratePerMinute <= 0) {
+        return 0L;
+      }
+      int burst = settings.getInt(DaDaPushNotificationProp.RATE_LIMIT_BURST.property());
+      return rateLimiters
+          .computeIfAbsent(message.getBasePath() + '|' + message.getChannelToken(), k -> new TokenBucket())
+          .acquire(System.currentTimeMillis(), ratePerMinute, burst);
+    }
+
+    /**
+     * Forgets full buckets, they behave exactly like new ones. Keeps the map as small as the set of recently
+     * active channels.
+     */
+    private void sweepRateLimiters() {
+      int ratePerMinute = settings.getInt(DaDaPushNotificationProp.RATE_LIMIT.property());
+      int burst = settings.getInt(DaDaPushNotificationProp.RATE_LIMIT_BURST.property());
+      long now = System.currentTimeMillis();
+      rateLimiters.values().removeIf(bucket -> ratePerMinute <= 0 || bucket.isIdle(now, ratePerMinute, burst));
+    }
+  }
+}
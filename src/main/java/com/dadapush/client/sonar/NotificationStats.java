@@ -0,0 +1,329 @@
+package com.dadapush.client.sonar;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Counters and latency histograms of the whole notification path, from {@code finished()} to the HTTP call.
+ * Registered as MBean {@value #OBJECT_NAME} in the platform MBean server of the Compute Engine,
+ * so it can be read with any JMX client.
+ */
+@ComputeEngineSide
+public class NotificationStats implements NotificationStatsMBean, Startable {
+
+  private static final Logger LOG = Loggers.get(NotificationStats.class);
+
+  static final String OBJECT_NAME = "com.dadapush.client.sonar:type=NotificationStats";
+
+  private final MetricCache metricCache;
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder givenUp = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+  private final LongAdder serializationsSaved = new LongAdder();
+  private final LongAdder payloadBytes = new LongAdder();
+  private final LongAdder wireBytes = new LongAdder();
+  private final Map<SkipReason, LongAdder> skipped = new EnumMap<>(SkipReason.class);
+
+  private final LatencyHistogram refreshLatency = new LatencyHistogram();
+  private final LatencyHistogram lookupLatency = new LatencyHistogram();
+  private final LatencyHistogram renderLatency = new LatencyHistogram();
+  private final LatencyHistogram httpLatency = new LatencyHistogram();
+  private final LatencyHistogram serializeLatency = new LatencyHistogram();
+
+  private volatile IntSupplier queueDepth = () -> 0;
+  private ObjectName objectName;
+
+  public NotificationStats(MetricCache metricCache) {
+    this.metricCache = metricCache;
+    for (SkipReason reason : SkipReason.values()) {
+      skipped.put(reason, new LongAdder());
+    }
+  }
+
+  @Override
+  public void start() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+      objectName = name;
+    } catch (JMException e) {
+      LOG.warn("Failed to register DaDaPush notification statistics in JMX", e);
+    }
+  }
+
+  @Override
+  public void stop() {
+    LOG.info("DaDaPush notification statistics: {}", getSummary());
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException e) {
+        LOG.debug("Failed to unregister DaDaPush notification statistics from JMX", e);
+      }
+      objectName = null;
+    }
+  }
+
+  void setQueueDepthSupplier(IntSupplier queueDepth) {
+    this.queueDepth = queueDepth;
+  }
+
+  void skipped(SkipReason reason) {
+    skipped.get(reason).increment();
+  }
+
+  void sent() {
+    sent.increment();
+  }
+
+  void failed() {
+    failed.increment();
+  }
+
+  void givenUp() {
+    givenUp.increment();
+  }
+
+  void retried() {
+    retries.increment();
+  }
+
+  void dropped() {
+    dropped.increment();
+  }
+
+  void rateLimited() {
+    rateLimited.increment();
+  }
+
+  /**
+   * A {@link Payload} was sent again without serializing it, to another channel or on retry.
+   */
+  void serializationReused() {
+    serializationsSaved.increment();
+  }
+
+  /**
+   * @param jsonBytes size of the serialized body
+   * @param wireBytes size of the request body actually sent, smaller than jsonBytes when compressed
+   */
+  void payloadSent(int jsonBytes, int wireBytes) {
+    payloadBytes.add(jsonBytes);
+    this.wireBytes.add(wireBytes);
+  }
+
+  LatencyHistogram refreshLatency() {
+    return refreshLatency;
+  }
+
+  LatencyHistogram lookupLatency() {
+    return lookupLatency;
+  }
+
+  LatencyHistogram renderLatency() {
+    return renderLatency;
+  }
+
+  LatencyHistogram httpLatency() {
+    return httpLatency;
+  }
+
+  LatencyHistogram serializeLatency() {
+    return serializeLatency;
+  }
+
+  @Override
+  public long getSent() {
+    return sent.sum();
+  }
+
+  @Override
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  @Override
+  public long getGivenUp() {
+    return givenUp.sum();
+  }
+
+  @Override
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public long getSkippedDisabled() {
+    return skipped.get(SkipReason.DISABLED).sum();
+  }
+
+  @Override
+  public long getSkippedNoConfig() {
+    return skipped.get(SkipReason.NO_CONFIG).sum();
+  }
+
+  @Override
+  public long getSkippedQgFailOnly() {
+    return skipped.get(SkipReason.QG_FAIL_ONLY).sum();
+  }
+
+  @Override
+  public long getSkippedBlankToken() {
+    return skipped.get(SkipReason.BLANK_TOKEN).sum();
+  }
+
+  @Override
+  public long getSkippedChannelFilter() {
+    return skipped.get(SkipReason.CHANNEL_FILTER).sum();
+  }
+
+  @Override
+  public long getSkippedDuplicate() {
+    return skipped.get(SkipReason.DUPLICATE).sum();
+  }
+
+  @Override
+  public long getSkippedRouted() {
+    return skipped.get(SkipReason.ROUTED).sum();
+  }
+
+  @Override
+  public long getRateLimited() {
+    return rateLimited.sum();
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return queueDepth.getAsInt();
+  }
+
+  @Override
+  public long getMetricCacheHits() {
+    return metricCache.getHits();
+  }
+
+  @Override
+  public long getMetricCacheMisses() {
+    return metricCache.getMisses();
+  }
+
+  @Override
+  public double getRefreshP99Millis() {
+    return refreshLatency.getPercentileMillis(0.99d);
+  }
+
+  @Override
+  public double getLookupP99Millis() {
+    return lookupLatency.getPercentileMillis(0.99d);
+  }
+
+  @Override
+  public double getRenderP99Millis() {
+    return renderLatency.getPercentileMillis(0.99d);
+  }
+
+  @Override
+  public double getHttpP50Millis() {
+    return httpLatency.getPercentileMillis(0.5d);
+  }
+
+  @Override
+  public double getHttpP99Millis() {
+    return httpLatency.getPercentileMillis(0.99d);
+  }
+
+  @Override
+  public double getHttpMaxMillis() {
+    return httpLatency.getMaxMillis();
+  }
+
+  @Override
+  public long getSerializations() {
+    return serializeLatency.getCount();
+  }
+
+  @Override
+  public long getSerializationsSaved() {
+    return serializationsSaved.sum();
+  }
+
+  @Override
+  public double getSerializationSavedMillis() {
+    return serializationsSaved.sum() * serializeLatency.getMeanMillis();
+  }
+
+  @Override
+  public long getPayloadBytes() {
+    return payloadBytes.sum();
+  }
+
+  @Override
+  public long getWireBytes() {
+    return wireBytes.sum();
+  }
+
+  @Override
+  public String getSummary() {
+    final StringBuilder sb = new StringBuilder("{");
+    sb.append("sent=").append(getSent());
+    sb.append(", failed=").append(getFailed());
+    sb.append(", givenUp=").append(getGivenUp());
+    sb.append(", retries=").append(getRetries());
+    sb.append(", dropped=").append(getDropped());
+    sb.append(", rateLimited=").append(getRateLimited());
+    sb.append(", skipped=").append(skipped);
+    sb.append(", queueDepth=").append(getQueueDepth());
+    sb.append(", metricCache=").append(getMetricCacheHits()).append('/').append(getMetricCacheMisses());
+    sb.append(", refresh=[").append(refreshLatency).append(']');
+    sb.append(", lookup=[").append(lookupLatency).append(']');
+    sb.append(", render=[").append(renderLatency).append(']');
+    sb.append(", http=[").append(httpLatency).append(']');
+    sb.append(", serialize=[").append(serializeLatency).append(']');
+    sb.append(", serializationsSaved=").append(getSerializationsSaved());
+    sb.append(", bytes=").append(getWireBytes()).append('/').append(getPayloadBytes());
+    sb.append('}');
+    return sb.toString();
+  }
+
+  @Override
+  public void reset() {
+    sent.reset();
+    failed.reset();
+    givenUp.reset();
+    retries.reset();
+    dropped.reset();
+    rateLimited.reset();
+    skipped.values().forEach(LongAdder::reset);
+    refreshLatency.reset();
+    lookupLatency.reset();
+    renderLatency.reset();
+    httpLatency.reset();
+    serializeLatency.reset();
+    serializationsSaved.reset();
+    payloadBytes.reset();
+    wireBytes.reset();
+  }
+}
@@ -0,0 +1,77 @@
+package com.dadapush.client.sonar;
+
+/**
+ * JMX view of {@link NotificationStats}. Durations are in milliseconds.
+ */
+public interface NotificationStatsMBean {
+
+  long getSent();
+
+  long getFailed();
+
+  long getGivenUp();
+
+  long getRetries();
+
+  long getDropped();
+
+  long getSkippedDisabled();
+
+  long getSkippedNoConfig();
+
+  long getSkippedQgFailOnly();
+
+  long getSkippedBlankToken();
+
+  long getSkippedChannelFilter();
+
+  long getSkippedDuplicate();
+
+  long getSkippedRouted();
+
+  long getRateLimited();
+
+  int getQueueDepth();
+
+  long getMetricCacheHits();
+
+  long getMetricCacheMisses();
+
+  double getRefreshP99Millis();
+
+  double getLookupP99Millis();
+
+  double getRenderP99Millis();
+
+  double getHttpP50Millis();
+
+  double getHttpP99Millis();
+
+  double getHttpMaxMillis();
+
+  long getSerializations();
+
+  /**
+   * @return serializations avoided by reusing the bytes of a payload for other channels and retries
+   */
+  long getSerializationsSaved();
+
+  /**
+   * @return estimated time saved by those, at the mean serialization time
+   */
+  double getSerializationSavedMillis();
+
+  /**
+   * @return uncompressed size of all request bodies sent
+   */
+  long getPayloadBytes();
+
+  /**
+   * @return size of all request bodies as sent, after compression
+   */
+  long getWireBytes();
+
+  String getSummary();
+
+  void reset();
+}
@@ -0,0 +1,422 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.model.MessagePushRequest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * File backed log of notifications which are not delivered yet, so they survive a restart.
+ * <pre>
+ * 1) every submitted notification is appended to the active segment file as an ADD record
+ * 2) once it is delivered, or given up, an ACK record with the same id is appended
+ * 3) appends only write to the page cache, a background task forces the file to disk every syncInterval (group commit)
+ * 4) the active segment is rolled when it grows beyond {@link #SEGMENT_SIZE}, rolled segments are deleted once all their entries are acknowledged
+ * 5) on startup all segments are read, unacknowledged entries are copied to a fresh segment and the old segments deleted
+ * </pre>
+ * A record torn by a crash is detected by its checksum, reading stops there.
+ * Channel tokens are not written to the segments, only a SHA-256 reference to them which is resolved against the
+ * configured channels when the outbox is opened again. Directory and segments are only accessible to their owner
+ * where the file system supports POSIX permissions.
+ */
+class Outbox {
+
+  private static final Logger LOG = Loggers.get(Outbox.class);
+
+  static final long SEGMENT_SIZE = 4L * 1024 * 1024;
+
+  private static final byte ADD = 1;
+  private static final byte ACK = 2;
+  private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+  private static final Set<PosixFilePermission> SEGMENT_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Path directory;
+  private final boolean posix;
+  /**
+   * Segments by the first id written to them.
+   */
+  private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+
+  private Segment active;
+  private long nextId = 1L;
+  private boolean dirty;
+
+  private Outbox(Path directory) {
+    this.directory = directory;
+    this.posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+
+  /**
+   * Opens the outbox in directory and returns the notifications left undelivered by the previous run.
+   * They are already persisted again and carry their new outbox ids.
+   *
+   * @param channelTokens resolves a {@link #channelReference(String)} to the channel token, null if no configured
+   *     channel has it anymore. Notifications for such channels are dropped.
+   */
+  static Outbox open(File directory, Function<String, String> channelTokens, List<PendingMessage> recovered)
+      throws IOException {
+    Outbox outbox = new Outbox(directory.toPath());
+    outbox.createDirectory();
+    List<Path> oldSegments = outbox.listSegments();
+    Map<Long, PendingMessage> live = new LinkedHashMap<>();
+    for (Path segment : oldSegments) {
+      readSegment(segment, channelTokens, live);
+    }
+    int unresolved = 0;
+    for (Iterator<PendingMessage> iterator = live.values().iterator(); iterator.hasNext(); ) {
+      if (iterator.next().getChannelToken() == null) {
+        iterator.remove();
+        unresolved++;
+      }
+    }
+    if (unresolved > 0) {
+      LOG.warn("Dropped {} undelivered notification(s) from {}, their channel is not configured anymore",
+          unresolved, directory);
+    }
+    long firstSequence = oldSegments.isEmpty() ? 1L : sequenceOf(oldSegments.get(oldSegments.size() - 1)) + 1;
+    outbox.roll(firstSequence);
+    for (PendingMessage message : live.values()) {
+      outbox.append(message);
+      recovered.add(message);
+    }
+    outbox.sync();
+    for (Path segment : oldSegments) {
+      Files.delete(segment);
+    }
+    if (!live.isEmpty()) {
+      LOG.info("Recovered {} undelivered notification(s) from {}", live.size(), directory);
+    }
+    return outbox;
+  }
+
+  /**
+   * Forces appended records to disk every syncIntervalMs, until scheduler is shut down.
+   */
+  void scheduleSync(ScheduledExecutorService scheduler, long syncIntervalMs) {
+    scheduler.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the reference persisted instead of channelToken
+   */
+  static String channelReference(String channelToken) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(channelToken.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform implements SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return true if directory holds segments of a previous run, which may contain undelivered notifications
+   */
+  static boolean hasEntries(File directory) {
+    if (directory == null || !directory.isDirectory()) {
+      return false;
+    }
+    try {
+      return !new Outbox(directory.toPath()).listSegments().isEmpty();
+    } catch (IOException e) {
+      LOG.warn("Failed to list outbox segments in " + directory, e);
+      return true;
+    }
+  }
+
+  /**
+   * Persists message and assigns its outbox id. Does not wait for the data to reach the disk.
+   */
+  synchronized void append(PendingMessage message) throws IOException {
+    long id = nextId++;
+    byte[] payload = encode(message);
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 4 + payload.length + 8);
+    buffer.put(ADD).putLong(id).putInt(payload.length).put(payload).putLong(crc.getValue());
+    write(buffer);
+    active.live++;
+    message.setOutboxIds(id);
+    if (active.size >= SEGMENT_SIZE) {
+      roll(active.sequence + 1);
+    }
+  }
+
+  /**
+   * Marks the given ids as done, they will not be recovered anymore.
+   */
+  synchronized void ack(long... ids) {
+    try {
+      for (long id : ids) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8);
+        buffer.put(ACK).putLong(id);
+        write(buffer);
+        Map.Entry<Long, Segment> entry = segments.floorEntry(id);
+        if (entry != null) {
+          entry.getValue().live--;
+        }
+      }
+      compact();
+    } catch (IOException e) {
+      LOG.warn("Failed to acknowledge notification(s) in outbox, they may be sent again after a restart", e);
+    }
+  }
+
+  /**
+   * Closes the active segment. Segments are deleted if all their entries are acknowledged, so that a clean
+   * shutdown leaves nothing to recover.
+   */
+  synchronized void close() {
+    syncQuietly();
+    try {
+      active.channel.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close outbox segment " + active.path, e);
+    }
+    compact();
+    if (segments.size() == 1 && active.live == 0) {
+      try {
+        Files.deleteIfExists(active.path);
+        segments.clear();
+      } catch (IOException e) {
+        LOG.warn("Failed to delete outbox segment " + active.path, e);
+      }
+    }
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      active.size += active.channel.write(buffer);
+    }
+    dirty = true;
+  }
+
+  /**
+   * Forces outside of the lock, so appends are not blocked while the disk flushes.
+   */
+  private void sync() throws IOException {
+    FileChannel channel;
+    synchronized (this) {
+      if (!dirty) {
+        return;
+      }
+      dirty = false;
+      channel = active.channel;
+    }
+    try {
+      channel.force(false);
+    } catch (ClosedChannelException e) {
+      // segment was rolled meanwhile, rolling forces it before closing
+    }
+  }
+
+  private void syncQuietly() {
+    try {
+      sync();
+    } catch (IOException e) {
+      LOG.warn("Failed to sync outbox in " + directory, e);
+    }
+  }
+
+  private void roll(long sequence) throws IOException {
+    if (active != null) {
+      active.channel.force(false);
+      active.channel.close();
+    }
+    Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    FileChannel channel = FileChannel.open(path,
+        EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+        ownerOnly(SEGMENT_PERMISSIONS));
+    active = new Segment(sequence, path, channel);
+    segments.put(nextId, active);
+    compact();
+  }
+
+  private void createDirectory() throws IOException {
+    Files.createDirectories(directory, ownerOnly(DIRECTORY_PERMISSIONS));
+    if (posix) {
+      // the directory may have been created by a version which did not restrict it
+      Files.setPosixFilePermissions(directory, DIRECTORY_PERMISSIONS);
+    }
+  }
+
+  private FileAttribute<?>[] ownerOnly(Set<PosixFilePermission> permissions) {
+    return posix ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(permissions)}
+        : new FileAttribute<?>[0];
+  }
+
+  /**
+   * Deletes rolled segments whose entries are all acknowledged. Acks for their ids may be in a later segment,
+   * so only segments older than every segment with live entries are deleted.
+   */
+  private void compact() {
+    Iterator<Segment> iterator = segments.values().iterator();
+    while (iterator.hasNext()) {
+      Segment segment = iterator.next();
+      if (segment == active || segment.live > 0) {
+        return;
+      }
+      try {
+        Files.deleteIfExists(segment.path);
+        iterator.remove();
+      } catch (IOException e) {
+        LOG.warn("Failed to delete outbox segment " + segment.path, e);
+        return;
+      }
+    }
+  }
+
+  private List<Path> listSegments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+          .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static long sequenceOf(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static void readSegment(Path segment, Function<String, String> channelTokens,
+      Map<Long, PendingMessage> live) throws IOException {
+    try (InputStream in = Files.newInputStream(segment);
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+      while (true) {
+        byte type = data.readByte();
+        long id = data.readLong();
+        if (type == ACK) {
+          live.remove(id);
+        } else if (type == ADD) {
+          byte[] payload = new byte[data.readInt()];
+          data.readFully(payload);
+          CRC32 crc = new CRC32();
+          crc.update(payload);
+          if (crc.getValue() != data.readLong()) {
+            LOG.warn("Corrupted record in outbox segment {}, ignoring the rest of it", segment);
+            return;
+          }
+          PendingMessage message = decode(payload, channelTokens);
+          if (message == null) {
+            LOG.warn("Corrupted record in outbox segment {}, ignoring the rest of it", segment);
+            return;
+          }
+          live.put(id, message);
+        } else {
+          LOG.warn("Unknown record in outbox segment {}, ignoring the rest of it", segment);
+          return;
+        }
+      }
+    } catch (EOFException e) {
+      // end of segment, or a record torn by a crash
+    }
+  }
+
+  private static byte[] encode(PendingMessage message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writeString(out, message.getProjectKey());
+      writeString(out, message.getChannelToken() == null ? null : channelReference(message.getChannelToken()));
+      writeString(out, message.getBasePath());
+      writeString(out, message.getBody().getTitle());
+      writeString(out, message.getBody().getContent());
+      out.writeBoolean(Boolean.TRUE.equals(message.getBody().getNeedPush()));
+      writeString(out, message.getSummary());
+      out.writeByte(message.getPriority().ordinal());
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return null if the payload is not a valid message
+   */
+  private static PendingMessage decode(byte[] payload, Function<String, String> channelTokens) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      String projectKey = readString(in);
+      String channelToken = channelTokens.apply(readString(in));
+      String basePath = readString(in);
+      MessagePushRequest body = new MessagePushRequest();
+      body.setTitle(readString(in));
+      body.setContent(readString(in));
+      body.setNeedPush(in.readBoolean());
+      String summary = readString(in);
+      int priority = in.readUnsignedByte();
+      if (priority >= Priority.values().length || in.available() > 0) {
+        return null;
+      }
+      return new PendingMessage(projectKey, channelToken, basePath, body, summary, Priority.values()[priority]);
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static class Segment {
+
+    private final long sequence;
+    private final Path path;
+    private final FileChannel channel;
+    private long size;
+    private int live;
+
+    private Segment(long sequence, Path path, FileChannel channel) {
+      this.sequence = sequence;
+      this.path = path;
+      this.channel = channel;
+    }
+  }
+}
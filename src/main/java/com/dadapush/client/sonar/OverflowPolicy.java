@@ -0,0 +1,33 @@
+package com.dadapush.client.sonar;
+
+/**
+ * What the {@link NotificationDispatcher} does with a new notification when its queue is full.
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Discard the oldest queued notification of the lowest priority to make room for the new one. If all queued
+   * notifications have a higher priority, the new one is discarded.
+   */
+  DROP_OLDEST,
+  /**
+   * Discard the new notification, keeping everything already queued.
+   */
+  DROP_NEWEST,
+  /**
+   * Wait up to {@link DaDaPushNotificationProp#DELIVERY_BLOCK_TIMEOUT} for free space, then discard
+   * the new notification.
+   */
+  BLOCK;
+
+  static OverflowPolicy parse(String value) {
+    if (value != null) {
+      for (OverflowPolicy policy : values()) {
+        if (policy.name().equalsIgnoreCase(value.trim())) {
+          return policy;
+        }
+      }
+    }
+    return DROP_OLDEST;
+  }
+}
@@ -0,0 +1,79 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.JSON;
+import com.dadapush.client.model.MessagePushRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The body of a notification, serialized once and shared by all {@link PendingMessage}s delivering it.
+ * <pre>
+ * 1) the same body sent to several channels, and every retry, reuses the JSON bytes of the first send
+ * 2) the gzip compressed bytes are also built only once, the first time compression is asked for
+ * 3) bodies smaller than {@link #GZIP_MIN_BYTES}, or which do not shrink, are never compressed
+ * </pre>
+ * The body must not be changed once the payload was created.
+ */
+final class Payload {
+
+  /**
+   * Below this size the gzip header and trailer outweigh the savings.
+   */
+  static final int GZIP_MIN_BYTES = 256;
+
+  private static final byte[] NOT_COMPRESSED = new byte[0];
+
+  private final MessagePushRequest body;
+  private byte[] json;
+  private byte[] gzipped;
+
+  Payload(MessagePushRequest body) {
+    this.body = body;
+  }
+
+  MessagePushRequest getBody() {
+    return body;
+  }
+
+  /**
+   * @return the body as UTF-8 JSON, serialized with serializer on first call
+   */
+  synchronized byte[] getJson(JSON serializer, NotificationStats stats) {
+    if (json != null) {
+      stats.serializationReused();
+      return json;
+    }
+    long start = System.nanoTime();
+    json = serializer.serialize(body).getBytes(StandardCharsets.UTF_8);
+    stats.serializeLatency().recordSince(start);
+    return json;
+  }
+
+  /**
+   * @return the gzip compressed JSON, null if it is not worth compressing
+   * @throws IllegalStateException if {@link #getJson(JSON, NotificationStats)} was not called yet
+   */
+  synchronized byte[] getGzipped() {
+    if (json == null) {
+      throw new IllegalStateException("Payload not serialized yet");
+    }
+    if (gzipped == null) {
+      gzipped = json.length < GZIP_MIN_BYTES ? NOT_COMPRESSED : gzip(json);
+    }
+    return gzipped == NOT_COMPRESSED ? null : gzipped;
+  }
+
+  private static byte[] gzip(byte[] uncompressed) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(uncompressed.length / 2);
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(uncompressed);
+    } catch (IOException e) {
+      // not thrown by in memory streams
+      throw new UncheckedIOException(e);
+    }
+    return bytes.size() < uncompressed.length ? bytes.toByteArray() : NOT_COMPRESSED;
+  }
+}
@@ -0,0 +1,127 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.model.MessagePushRequest;
+
+/**
+ * A fully prepared notification waiting to be delivered to one channel.
+ */
+public class PendingMessage {
+
+  /**
+   * DaDaPush rejects longer titles.
+   */
+  public static final int MAX_TITLE_LENGTH = 50;
+  /**
+   * DaDaPush rejects longer contents.
+   */
+  public static final int MAX_CONTENT_LENGTH = 500;
+
+  private final String projectKey;
+  private final String channelToken;
+  private final String basePath;
+  private final Payload payload;
+  private final String summary;
+  private final Priority priority;
+  private int attempts;
+  private long deferredSince;
+  private long[] outboxIds = new long[0];
+
+  /**
+   * @param summary one line describing the notification, used when it is merged into a digest
+   */
+  public PendingMessage(String projectKey, String channelToken, String basePath,
+      MessagePushRequest body, String summary) {
+    this(projectKey, channelToken, basePath, body, summary, Priority.NORMAL);
+  }
+
+  public PendingMessage(String projectKey, String channelToken, String basePath,
+      MessagePushRequest body, String summary, Priority priority) {
+    this(projectKey, channelToken, basePath, new Payload(body), summary, priority);
+  }
+
+  /**
+   * @param payload shared by the messages delivering the same body to other channels
+   */
+  PendingMessage(String projectKey, String channelToken, String basePath, Payload payload,
+      String summary, Priority priority) {
+    this.projectKey = projectKey;
+    this.channelToken = channelToken;
+    this.basePath = basePath;
+    this.payload = payload;
+    this.summary = summary;
+    this.priority = priority;
+  }
+
+  public String getProjectKey() {
+    return projectKey;
+  }
+
+  public String getChannelToken() {
+    return channelToken;
+  }
+
+  public String getBasePath() {
+    return basePath;
+  }
+
+  public MessagePushRequest getBody() {
+    return payload.getBody();
+  }
+
+  Payload getPayload() {
+    return payload;
+  }
+
+  public String getSummary() {
+    return summary;
+  }
+
+  public Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return ids of the {@link Outbox} entries to acknowledge once this message is done, several for a digest
+   */
+  long[] getOutboxIds() {
+    return outboxIds;
+  }
+
+  void setOutboxIds(long... outboxIds) {
+    this.outboxIds = outboxIds;
+  }
+
+  /**
+   * Only called by the delivery thread currently owning this message.
+   *
+   * @return number of delivery attempts including this one
+   */
+  int incrementAttempts() {
+    deferredSince = 0L;
+    return ++attempts;
+  }
+
+  /**
+   * Only called by the delivery thread currently owning this message, when it is put back without an attempt.
+   *
+   * @return when the message was first deferred since its last attempt
+   */
+  long defer(long now) {
+    if (deferredSince == 0L) {
+      deferredSince = now;
+    }
+    return deferredSince;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("PendingMessage{");
+    sb.append("projectKey='").append(projectKey).append('\'');
+    sb.append(", basePath='").append(basePath).append('\'');
+    sb.append(", title='").append(payload.getBody().getTitle()).append('\'');
+    sb.append(", priority=").append(priority);
+    sb.append(", attempts=").append(attempts);
+    sb.append('}');
+    return sb.toString();
+  }
+}
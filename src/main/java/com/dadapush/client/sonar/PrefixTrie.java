@@ -0,0 +1,94 @@
+package com.dadapush.client.sonar;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Character trie mapping key prefixes to values, shared by {@link ProjectConfigIndex} and {@link RoutingRules} to
+ * look up wildcard project keys.
+ * <pre>
+ * 1) every node keeps the characters of its children in a sorted char[], and the children in a parallel array
+ * 2) a child is found by binary search, no boxing and no hash table per node
+ * 3) {@link #root()} and {@link Node#child(char)} walk the prefixes of a key, shortest first
+ * </pre>
+ * Not thread safe while it is built, immutable once published.
+ *
+ * @param <V> type of the values stored at the end of a prefix
+ */
+final class PrefixTrie<V> {
+
+  private static final char[] NO_LABELS = new char[0];
+
+  private final Node<V> root = new Node<>();
+
+  Node<V> root() {
+    return root;
+  }
+
+  /**
+   * @return the value stored at prefix, created by factory if there was none
+   */
+  V computeIfAbsent(String prefix, Supplier<V> factory) {
+    Node<V> node = root;
+    for (int i = 0; i < prefix.length(); i++) {
+      node = node.childOrInsert(prefix.charAt(i));
+    }
+    if (node.value == null) {
+      node.value = factory.get();
+    }
+    return node.value;
+  }
+
+  void put(String prefix, V value) {
+    Node<V> node = root;
+    for (int i = 0; i < prefix.length(); i++) {
+      node = node.childOrInsert(prefix.charAt(i));
+    }
+    node.value = value;
+  }
+
+  static final class Node<V> {
+
+    private char[] labels = NO_LABELS;
+    private Node<V>[] children;
+    private V value;
+
+    /**
+     * @return the value stored at the prefix ending in this node, null if none
+     */
+    V getValue() {
+      return value;
+    }
+
+    /**
+     * @return the node of the prefix extended by c, null if no stored prefix starts that way
+     */
+    Node<V> child(char c) {
+      int index = Arrays.binarySearch(labels, c);
+      return index < 0 ? null : children[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<V> childOrInsert(char c) {
+      int index = Arrays.binarySearch(labels, c);
+      if (index >= 0) {
+        return children[index];
+      }
+      int insertion = -index - 1;
+      char[] newLabels = new char[labels.length + 1];
+      Node<V>[] newChildren = new Node[labels.length + 1];
+      System.arraycopy(labels, 0, newLabels, 0, insertion);
+      System.arraycopy(labels, insertion, newLabels, insertion + 1, labels.length - insertion);
+      if (children != null) {
+        System.arraycopy(children, 0, newChildren, 0, insertion);
+        System.arraycopy(children, insertion, newChildren, insertion + 1, labels.length - insertion);
+      }
+      Node<V> child = new Node<>();
+      newLabels[insertion] = c;
+      newChildren[insertion] = child;
+      labels = newLabels;
+      children = newChildren;
+      return child;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Delivery priority of a notification, see {@link PriorityMessageQueue}.
+ * <pre>
+ * HIGH:   failed Quality Gate, a high priority project, or a failed priority metric
+ * NORMAL: Quality Gate with warnings
+ * LOW:    passed Quality Gate
+ * </pre>
+ */
+public enum Priority {
+
+  LOW, NORMAL, HIGH;
+
+  static Priority parse(String value, Priority defaultValue) {
+    if (value != null) {
+      for (Priority priority : values()) {
+        if (priority.name().equalsIgnoreCase(value.trim())) {
+          return priority;
+        }
+      }
+    }
+    return defaultValue;
+  }
+
+  Priority max(Priority other) {
+    return other != null && other.ordinal() > ordinal() ? other : this;
+  }
+}
@@ -0,0 +1,183 @@
+package com.dadapush.client.sonar;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded delivery queue which serves high priority notifications first without starving the others.
+ * <pre>
+ * 1) every {@link Priority} has its own FIFO lane, the capacity is shared by all lanes
+ * 2) a waiting notification gains one priority level per agingMs it waited, so an old LOW notification
+ *    is eventually served before a fresh HIGH one
+ * 3) taking compares only the heads of the lanes, so it costs O(number of priorities)
+ * 4) when room is needed, the oldest notification of the lowest non empty lane is evicted
+ * </pre>
+ */
+class PriorityMessageQueue {
+
+  private static final Priority[] PRIORITIES = Priority.values();
+
+  private final int capacity;
+  private final long agingNanos;
+  private final LongSupplier nanoClock;
+  private final Deque<Entry>[] lanes;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private int size;
+
+  PriorityMessageQueue(int capacity, long agingMs) {
+    this(capacity, agingMs, System::nanoTime);
+  }
+
+  /**
+   * @param nanoClock source of {@link System#nanoTime()}
+   */
+  @SuppressWarnings("unchecked")
+  PriorityMessageQueue(int capacity, long agingMs, LongSupplier nanoClock) {
+    this.capacity = capacity;
+    this.agingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, agingMs));
+    this.nanoClock = nanoClock;
+    this.lanes = new Deque[PRIORITIES.length];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = new ArrayDeque<>();
+    }
+  }
+
+  /**
+   * @return false if the queue is full
+   */
+  boolean offer(PendingMessage message) {
+    lock.lock();
+    try {
+      if (size >= capacity) {
+        return false;
+      }
+      insert(message);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits up to timeout for free space.
+   *
+   * @return false if the queue is still full
+   */
+  boolean offer(PendingMessage message, long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (size >= capacity) {
+        if (nanos <= 0L) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      insert(message);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the next notification to deliver, null if none arrived within timeout
+   */
+  PendingMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (size == 0) {
+        if (nanos <= 0L) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return remove(next(nanoClock.getAsLong()));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the oldest notification of the lowest priority, to make room for a new one.
+   *
+   * @param atMost only notifications of this or a lower priority are removed
+   * @return the removed notification, null if there is none of at most that priority
+   */
+  PendingMessage evict(Priority atMost) {
+    lock.lock();
+    try {
+      for (int i = 0; i <= atMost.ordinal(); i++) {
+        if (!lanes[i].isEmpty()) {
+          return remove(lanes[i]);
+        }
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  private void insert(PendingMessage message) {
+    lanes[message.getPriority().ordinal()].addLast(new Entry(message, nanoClock.getAsLong()));
+    size++;
+    notEmpty.signal();
+  }
+
+  private PendingMessage remove(Deque<Entry> lane) {
+    Entry entry = lane.pollFirst();
+    size--;
+    notFull.signal();
+    return entry.message;
+  }
+
+  /**
+   * @return the lane whose head has the highest priority after aging, the higher priority on ties
+   */
+  private Deque<Entry> next(long now) {
+    Deque<Entry> best = null;
+    long bestRank = Long.MIN_VALUE;
+    for (int i = lanes.length - 1; i >= 0; i--) {
+      Entry head = lanes[i].peekFirst();
+      if (head != null) {
+        long rank = i + (now - head.enqueuedAt) / agingNanos;
+        if (rank > bestRank) {
+          best = lanes[i];
+          bestRank = rank;
+        }
+      }
+    }
+    return best;
+  }
+
+  private static class Entry {
+
+    private final PendingMessage message;
+    private final long enqueuedAt;
+
+    private Entry(PendingMessage message, long enqueuedAt) {
+      this.message = message;
+      this.enqueuedAt = enqueuedAt;
+    }
+  }
+}
@@ -1,17 +1,36 @@
 package com.dadapush.client.sonar;
 
+import java.util.List;
 import java.util.Objects;
+import org.apache.commons.lang3.StringUtils;
 import org.sonar.api.config.Settings;
 
 public class ProjectConfig {
     private final String projectKey;
     private final String channelToken;
+    private final List<Channel> channels;
     private final boolean qgFailOnly;
+    private final String template;
+    private final MessageTemplate messageTemplate;
+    private final boolean highPriority;
 
     public ProjectConfig(String projectKey, String channelToken, boolean qgFailOnly) {
+        this(projectKey, channelToken, qgFailOnly, null);
+    }
+
+    public ProjectConfig(String projectKey, String channelToken, boolean qgFailOnly, String template) {
+        this(projectKey, channelToken, qgFailOnly, template, false);
+    }
+
+    public ProjectConfig(String projectKey, String channelToken, boolean qgFailOnly, String template,
+            boolean highPriority) {
         this.projectKey = projectKey;
         this.channelToken = channelToken;
+        this.channels = Channel.parseList(channelToken);
         this.qgFailOnly = qgFailOnly;
+        this.template = template;
+        this.messageTemplate = StringUtils.isBlank(template) ? null : MessageTemplate.compile(template);
+        this.highPriority = highPriority;
     }
 
     /**
@@ -22,16 +41,34 @@ public class ProjectConfig {
     public ProjectConfig(ProjectConfig c) {
         this.projectKey = c.getProjectKey();
         this.channelToken = c.getChannelToken();
+        this.channels = c.getChannels();
         this.qgFailOnly = c.isQgFailOnly();
+        this.template = c.getTemplate();
+        this.messageTemplate = c.getMessageTemplate();
+        this.highPriority = c.isHighPriority();
     }
 
     static ProjectConfig create(Settings settings, String configurationId) {
+        return fromRawValues(readRawValues(settings, configurationId));
+    }
+
+    /**
+     * Reads the unparsed field values of one project specific configuration, used to detect configuration changes.
+     */
+    static String[] readRawValues(Settings settings, String configurationId) {
         String configurationPrefix = DaDaPushNotificationProp.CONFIG.property() + "." + configurationId + ".";
-        String projectKey = settings.getString(configurationPrefix + DaDaPushNotificationProp.PROJECT.property());
-        String channelToken = settings.getString(configurationPrefix + DaDaPushNotificationProp.CHANNEL_TOKEN
-            .property());
-        boolean qgFailOnly = settings.getBoolean(configurationPrefix + DaDaPushNotificationProp.QG_FAIL_ONLY.property());
-        return new ProjectConfig(projectKey, channelToken, qgFailOnly);
+        return new String[] {
+            settings.getString(configurationPrefix + DaDaPushNotificationProp.PROJECT.property()),
+            settings.getString(configurationPrefix + DaDaPushNotificationProp.CHANNEL_TOKEN.property()),
+            settings.getString(configurationPrefix + DaDaPushNotificationProp.QG_FAIL_ONLY.property()),
+            settings.getString(configurationPrefix + DaDaPushNotificationProp.PROJECT_TEMPLATE.property()),
+            settings.getString(configurationPrefix + DaDaPushNotificationProp.PROJECT_HIGH_PRIORITY.property())
+        };
+    }
+
+    static ProjectConfig fromRawValues(String[] rawValues) {
+        return new ProjectConfig(rawValues[0], rawValues[1], Boolean.parseBoolean(rawValues[2]), rawValues[3],
+                Boolean.parseBoolean(rawValues[4]));
     }
 
     public String getProjectKey() {
@@ -42,23 +79,47 @@ public class ProjectConfig {
         return channelToken;
     }
 
+    /**
+     * @return the channels parsed from {@link #getChannelToken()}, empty if it is blank
+     */
+    public List<Channel> getChannels() {
+        return channels;
+    }
+
     public boolean isQgFailOnly() {
         return qgFailOnly;
     }
 
+    public String getTemplate() {
+        return template;
+    }
+
+    public boolean isHighPriority() {
+        return highPriority;
+    }
+
+    /**
+     * @return the compiled {@link #getTemplate()}, null if the global template is to be used
+     */
+    MessageTemplate getMessageTemplate() {
+        return messageTemplate;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProjectConfig that = (ProjectConfig) o;
         return qgFailOnly == that.qgFailOnly &&
+                highPriority == that.highPriority &&
                 Objects.equals(projectKey, that.projectKey) &&
-                Objects.equals(channelToken, that.channelToken);
+                Objects.equals(channelToken, that.channelToken) &&
+                Objects.equals(template, that.template);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(projectKey, channelToken, qgFailOnly);
+        return Objects.hash(projectKey, channelToken, qgFailOnly, template, highPriority);
     }
 
     @Override
@@ -67,6 +128,12 @@ public class ProjectConfig {
         sb.append("projectKey='").append(projectKey).append('\'');
         sb.append(", channelToken='").append(channelToken).append('\'');
         sb.append(", qgFailOnly=").append(qgFailOnly);
+        if (template != null) {
+            sb.append(", template='").append(template).append('\'');
+        }
+        if (highPriority) {
+            sb.append(", highPriority=true");
+        }
         sb.append('}');
         return sb.toString();
     }
@@ -0,0 +1,77 @@
+package com.dadapush.client.sonar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Project configurations compiled for lookup by project key.
+ * <pre>
+ * 1) keys without a trailing '*' go into a hash table and are matched exactly
+ * 2) keys with a trailing '*' go into a {@link PrefixTrie}, the longest matching prefix wins
+ * 3) an exact match always wins over a wildcard match
+ * </pre>
+ * Lookups cost O(project key length) no matter how many configurations exist.
+ * Instances are immutable once built.
+ */
+class ProjectConfigIndex {
+
+    static final ProjectConfigIndex EMPTY = new ProjectConfigIndex(Collections.emptyMap());
+
+    private final Map<String, ProjectConfig> exact = new HashMap<>();
+    private final PrefixTrie<ProjectConfig> wildcards = new PrefixTrie<>();
+
+    ProjectConfigIndex(Map<String, ProjectConfig> projectConfigMap) {
+        projectConfigMap.forEach((key, config) -> {
+            if (key.endsWith("*")) {
+                wildcards.put(key.substring(0, key.length() - 1), config);
+            } else {
+                exact.put(key, config);
+            }
+        });
+    }
+
+    Match find(String projectKey) {
+        int matches = 0;
+        ProjectConfig best = null;
+        PrefixTrie.Node<ProjectConfig> node = wildcards.root();
+        for (int i = 0; node != null; i++) {
+            if (node.getValue() != null) {
+                best = node.getValue();
+                matches++;
+            }
+            node = i < projectKey.length() ? node.child(projectKey.charAt(i)) : null;
+        }
+        ProjectConfig exactConfig = exact.get(projectKey);
+        if (exactConfig != null) {
+            best = exactConfig;
+            matches++;
+        }
+        return new Match(best, matches);
+    }
+
+    static class Match {
+
+        private final ProjectConfig config;
+        private final int candidates;
+
+        private Match(ProjectConfig config, int candidates) {
+            this.config = config;
+            this.candidates = candidates;
+        }
+
+        /**
+         * @return the most specific configuration, or null if none matched
+         */
+        ProjectConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * @return how many configured keys matched the project key
+         */
+        int getCandidates() {
+            return candidates;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.dadapush.client.sonar;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.sonar.api.ce.posttask.QualityGate;
+
+/**
+ * Compact record of the Quality Gate conditions last reported for a project, kept by the {@link ProjectStateStore}
+ * to render what changed since then.
+ * <pre>
+ * 1) conditions are stored column wise: metric keys, statuses and values in parallel arrays
+ * 2) raw values are only kept where they are rendered: non numeric values, plain metrics and ratings
+ * 3) {@link #indexOf(String, int)} finds a condition in O(1), usually by position as Quality Gates rarely change
+ * </pre>
+ * Instances are immutable.
+ */
+final class ProjectState {
+
+  private static final QualityGate.EvaluationStatus[] STATUSES = QualityGate.EvaluationStatus.values();
+
+  private final String[] metricKeys;
+  private final byte[] statuses;
+  private final double[] values;
+  private final String[] rawValues;
+  private volatile Map<String, Integer> positions;
+
+  private ProjectState(String[] metricKeys, byte[] statuses, double[] values, String[] rawValues) {
+    this.metricKeys = metricKeys;
+    this.statuses = statuses;
+    this.values = values;
+    this.rawValues = rawValues;
+  }
+
+  static ProjectState of(List<EvaluatedCondition> conditions) {
+    int size = conditions.size();
+    String[] metricKeys = new String[size];
+    byte[] statuses = new byte[size];
+    double[] values = new double[size];
+    String[] rawValues = new String[size];
+    for (int i = 0; i < size; i++) {
+      EvaluatedCondition condition = conditions.get(i);
+      metricKeys[i] = condition.getMetric().getKey();
+      statuses[i] = (byte) condition.getStatus().ordinal();
+      values[i] = condition.getValue();
+      MetricDescriptor.Format format = condition.getMetric().getFormat();
+      if (Double.isNaN(values[i]) || format == MetricDescriptor.Format.PLAIN || format == MetricDescriptor.Format.RATING) {
+        rawValues[i] = condition.getRawValue();
+      }
+    }
+    return new ProjectState(metricKeys, statuses, values, rawValues);
+  }
+
+  int size() {
+    return metricKeys.length;
+  }
+
+  String getMetricKey(int index) {
+    return metricKeys[index];
+  }
+
+  /**
+   * @param hint position at which metricKey is expected
+   * @return the position of the condition on metricKey, -1 if there was none
+   */
+  int indexOf(String metricKey, int hint) {
+    if (hint >= 0 && hint < metricKeys.length && metricKeys[hint].equals(metricKey)) {
+      return hint;
+    }
+    Map<String, Integer> map = positions;
+    if (map == null) {
+      map = new HashMap<>(metricKeys.length * 2);
+      for (int i = 0; i < metricKeys.length; i++) {
+        map.put(metricKeys[i], i);
+      }
+      positions = map;
+    }
+    Integer position = map.get(metricKey);
+    return position == null ? -1 : position;
+  }
+
+  QualityGate.EvaluationStatus getStatus(int index) {
+    return STATUSES[statuses[index]];
+  }
+
+  double getValue(int index) {
+    return values[index];
+  }
+
+  /**
+   * @return the raw value, null if it is not rendered, see {@link MessageRenderer}
+   */
+  String getRawValue(int index) {
+    return rawValues[index];
+  }
+
+  /**
+   * @return true if condition has the same status and value as the one at index
+   */
+  boolean isUnchanged(int index, EvaluatedCondition condition) {
+    return statuses[index] == condition.getStatus().ordinal() && hasSameValue(index, condition);
+  }
+
+  /**
+   * @return true if condition has the same value as the one at index
+   */
+  boolean hasSameValue(int index, EvaluatedCondition condition) {
+    if (Double.isNaN(values[index]) || Double.isNaN(condition.getValue())) {
+      return Double.isNaN(values[index]) && Double.isNaN(condition.getValue())
+          && Objects.equals(rawValues[index], condition.getRawValue());
+    }
+    return Double.compare(values[index], condition.getValue()) == 0;
+  }
+
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(metricKeys.length);
+    for (int i = 0; i < metricKeys.length; i++) {
+      out.writeUTF(metricKeys[i]);
+      out.writeByte(statuses[i]);
+      out.writeDouble(values[i]);
+      out.writeBoolean(rawValues[i] != null);
+      if (rawValues[i] != null) {
+        out.writeUTF(rawValues[i]);
+      }
+    }
+  }
+
+  static ProjectState read(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    String[] metricKeys = new String[size];
+    byte[] statuses = new byte[size];
+    double[] values = new double[size];
+    String[] rawValues = new String[size];
+    for (int i = 0; i < size; i++) {
+      metricKeys[i] = in.readUTF();
+      statuses[i] = in.readByte();
+      if (statuses[i] < 0 || statuses[i] >= STATUSES.length) {
+        throw new IOException("Unknown condition status " + statuses[i]);
+      }
+      values[i] = in.readDouble();
+      rawValues[i] = in.readBoolean() ? in.readUTF() : null;
+    }
+    return new ProjectState(metricKeys, statuses, values, rawValues);
+  }
+}
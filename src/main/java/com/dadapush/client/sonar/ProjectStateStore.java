@@ -0,0 +1,159 @@
+package com.dadapush.client.sonar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Last reported {@link ProjectState} of every project branch and pull request, used to notify only what changed.
+ * <pre>
+ * 1) held in memory by subject, see {@link DaDaPushPostProjectAnalysisTask#getSubject}, at most
+ *    {@link #MAX_PROJECTS} subjects, the least recently analyzed one is evicted first
+ * 2) with {@link DaDaPushNotificationProp#DELTA_PERSIST} the states are written to a single file in the SonarQube
+ *    data directory on shutdown and read again on first use, so deltas survive a restart
+ * </pre>
+ */
+@ComputeEngineSide
+@SuppressWarnings("deprecation")
+public class ProjectStateStore implements Startable {
+
+  private static final Logger LOG = Loggers.get(ProjectStateStore.class);
+
+  static final int MAX_PROJECTS = 10_000;
+
+  private static final int FORMAT_VERSION = 1;
+  private static final String DATA_PATH_PROPERTY = "sonar.path.data";
+
+  private final Settings settings;
+  private final Map<String, ProjectState> states = new LinkedHashMap<String, ProjectState>(256, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ProjectState> eldest) {
+      return size() > MAX_PROJECTS;
+    }
+  };
+  private boolean loaded;
+  private boolean dirty;
+
+  public ProjectStateStore(Settings settings) {
+    this.settings = settings;
+  }
+
+  @Override
+  public void start() {
+    // loaded on first use
+  }
+
+  @Override
+  public void stop() {
+    save();
+  }
+
+  /**
+   * @return the last reported state of subject, null if there is none
+   */
+  synchronized ProjectState get(String subject) {
+    load();
+    return states.get(subject);
+  }
+
+  /**
+   * Records state as the last reported state of subject, once a notification about it is accepted for delivery.
+   */
+  synchronized void put(String subject, ProjectState state) {
+    load();
+    dirty = true;
+    states.put(subject, state);
+  }
+
+  /**
+   * Forgets all states, after saving them if they are persisted.
+   */
+  synchronized void clear() {
+    save();
+    states.clear();
+    loaded = false;
+  }
+
+  synchronized int size() {
+    return states.size();
+  }
+
+  /**
+   * @return the file states are persisted to, null if they are not
+   */
+  private File getFile() {
+    if (!settings.getBoolean(DaDaPushNotificationProp.DELTA_PERSIST.property())) {
+      return null;
+    }
+    String dataPath = settings.getString(DATA_PATH_PROPERTY);
+    return dataPath == null ? null : new File(new File(dataPath, "dadapush"), "project-states.bin");
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    File file = getFile();
+    if (file == null || !file.isFile()) {
+      return;
+    }
+    try (InputStream in = Files.newInputStream(file.toPath());
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+      if (data.readInt() != FORMAT_VERSION) {
+        LOG.info("Ignoring project states in unknown format {}", file);
+        return;
+      }
+      int count = data.readInt();
+      for (int i = 0; i < count; i++) {
+        String subject = data.readUTF();
+        states.put(subject, ProjectState.read(data));
+      }
+      LOG.debug("Read {} project state(s) from {}", count, file);
+    } catch (IOException e) {
+      LOG.warn("Failed to read project states from " + file + ", next notifications are not deltas", e);
+      states.clear();
+    }
+  }
+
+  private synchronized void save() {
+    File file = getFile();
+    if (!dirty || file == null) {
+      return;
+    }
+    Path target = file.toPath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(target.getParent());
+      try (OutputStream out = Files.newOutputStream(temp);
+          DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(states.size());
+        for (Map.Entry<String, ProjectState> entry : states.entrySet()) {
+          data.writeUTF(entry.getKey());
+          entry.getValue().write(data);
+        }
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      dirty = false;
+      LOG.debug("Wrote {} project state(s) to {}", states.size(), file);
+    } catch (IOException e) {
+      LOG.warn("Failed to write project states to " + file, e);
+    }
+  }
+}
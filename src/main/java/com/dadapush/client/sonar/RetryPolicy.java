@@ -0,0 +1,82 @@
+package com.dadapush.client.sonar;
+
+import com.dadapush.client.ApiException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import org.sonar.api.config.Settings;
+
+/**
+ * Decides whether and when a failed notification is sent again.
+ * <pre>
+ * 1) transport errors, timeouts, HTTP 408, 429 and 5xx are retryable, other HTTP errors are permanent
+ * 2) a non-zero DaDaPush result code is permanent, unless listed in {@link DaDaPushNotificationProp#RETRY_CODES}
+ * 3) the delay grows exponentially from the initial backoff up to the maximum backoff, with random jitter
+ * </pre>
+ */
+@SuppressWarnings("deprecation")
+class RetryPolicy {
+
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+  private final Set<Integer> retryableCodes;
+
+  RetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs,
+      Set<Integer> retryableCodes) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialBackoffMs = Math.max(1L, initialBackoffMs);
+    this.maxBackoffMs = Math.max(this.initialBackoffMs, maxBackoffMs);
+    this.retryableCodes = retryableCodes;
+  }
+
+  static RetryPolicy create(Settings settings) {
+    Set<Integer> codes = new HashSet<>();
+    for (String code : settings.getStringArray(DaDaPushNotificationProp.RETRY_CODES.property())) {
+      try {
+        codes.add(Integer.valueOf(code.trim()));
+      } catch (NumberFormatException e) {
+        // ignore invalid entries, they can never match a result code
+      }
+    }
+    return new RetryPolicy(
+        settings.getInt(DaDaPushNotificationProp.RETRY_MAX_ATTEMPTS.property()),
+        settings.getLong(DaDaPushNotificationProp.RETRY_INITIAL_BACKOFF.property()),
+        settings.getLong(DaDaPushNotificationProp.RETRY_MAX_BACKOFF.property()),
+        codes);
+  }
+
+  DeliveryResult classify(ApiException e) {
+    int status = e.getCode();
+    if (status == 0 || status == 408 || status == 429 || status >= 500) {
+      return DeliveryResult.RETRYABLE_FAILURE;
+    }
+    return DeliveryResult.PERMANENT_FAILURE;
+  }
+
+  DeliveryResult classify(int resultCode) {
+    if (resultCode == 0) {
+      return DeliveryResult.DELIVERED;
+    }
+    return retryableCodes.contains(resultCode) ? DeliveryResult.RETRYABLE_FAILURE
+        : DeliveryResult.PERMANENT_FAILURE;
+  }
+
+  boolean canRetry(int attempts) {
+    return attempts < maxAttempts;
+  }
+
+  /**
+   * @param attempts number of attempts made so far, at least 1
+   * @return delay before the next attempt, between half and all of the exponential backoff
+   */
+  long backoffMs(int attempts) {
+    int exponent = Math.min(attempts - 1, 30);
+    long backoff = Math.min(maxBackoffMs, initialBackoffMs << exponent);
+    if (backoff <= 0) {
+      backoff = maxBackoffMs;
+    }
+    long half = backoff / 2;
+    return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+  }
+}
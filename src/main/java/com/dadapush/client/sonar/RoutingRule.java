@@ -0,0 +1,169 @@
+package com.dadapush.client.sonar;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Settings;
+
+/**
+ * One entry of {@link DaDaPushNotificationProp#ROUTING}: which channels are notified about analyses matching
+ * all of its conditions. Empty conditions match every analysis.
+ * <pre>
+ * project          project key, '*' at the end matches any suffix
+ * branch           branch or pull request name, '*' matches any characters, e.g. feature/*
+ * branchType       {@link BranchScope}
+ * status           comma separated Quality Gate statuses, e.g. WARN,ERROR
+ * scannerProperty  key=value of a scanner context property, '*' in the value matches any characters,
+ *                  a key alone matches if the property is set
+ * channelToken     channels notified instead of those of the project, see {@link Channel}. Empty drops the notification
+ * </pre>
+ * Instances are immutable.
+ */
+public class RoutingRule {
+
+  private final int order;
+  private final String projectKey;
+  private final Pattern branchPattern;
+  private final BranchScope branchScope;
+  private final Set<QualityGate.Status> statuses;
+  private final String scannerPropertyKey;
+  private final Pattern scannerPropertyPattern;
+  private final List<Channel> channels;
+  private final String description;
+
+  private RoutingRule(int order, String[] rawValues) {
+    this.order = order;
+    this.projectKey = StringUtils.trimToNull(rawValues[0]);
+    this.branchPattern = compileGlob(rawValues[1]);
+    this.branchScope = BranchScope.parse(rawValues[2]);
+    this.statuses = parseStatuses(rawValues[3]);
+    String scannerProperty = StringUtils.trimToNull(rawValues[4]);
+    int separator = scannerProperty == null ? -1 : scannerProperty.indexOf('=');
+    this.scannerPropertyKey = separator < 0 ? scannerProperty : scannerProperty.substring(0, separator).trim();
+    this.scannerPropertyPattern = separator < 0 ? null : compileGlob(scannerProperty.substring(separator + 1));
+    this.channels = Channel.parseList(rawValues[5]);
+    this.description = String.join("|", toStrings(rawValues));
+  }
+
+  /**
+   * Reads the unparsed field values of one routing rule, used to detect configuration changes.
+   */
+  static String[] readRawValues(Settings settings, String ruleId) {
+    String prefix = DaDaPushNotificationProp.ROUTING.property() + "." + ruleId + ".";
+    return new String[] {
+        settings.getString(prefix + DaDaPushNotificationProp.PROJECT.property()),
+        settings.getString(prefix + DaDaPushNotificationProp.ROUTE_BRANCH.property()),
+        settings.getString(prefix + DaDaPushNotificationProp.ROUTE_BRANCH_TYPE.property()),
+        settings.getString(prefix + DaDaPushNotificationProp.ROUTE_STATUS.property()),
+        settings.getString(prefix + DaDaPushNotificationProp.ROUTE_SCANNER_PROPERTY.property()),
+        settings.getString(prefix + DaDaPushNotificationProp.CHANNEL_TOKEN.property())
+    };
+  }
+
+  /**
+   * @param order position of the rule, the first matching rule wins
+   */
+  static RoutingRule fromRawValues(int order, String[] rawValues) {
+    return new RoutingRule(order, rawValues);
+  }
+
+  int getOrder() {
+    return order;
+  }
+
+  /**
+   * @return the project key condition, null if the rule applies to all projects
+   */
+  String getProjectKey() {
+    return projectKey;
+  }
+
+  BranchScope getBranchScope() {
+    return branchScope;
+  }
+
+  /**
+   * @return true if the rule applies to Quality Gates with status, null standing for an unknown status
+   */
+  boolean acceptsStatus(QualityGate.Status status) {
+    return statuses.isEmpty() || statuses.contains(status);
+  }
+
+  boolean hasScannerPropertyCondition() {
+    return scannerPropertyKey != null;
+  }
+
+  /**
+   * Checks the conditions which are not decided by the {@link RoutingRules} index.
+   */
+  boolean matchesDetails(String branchName, Map<String, String> scannerProperties) {
+    if (branchPattern != null && (branchName == null || !branchPattern.matcher(branchName).matches())) {
+      return false;
+    }
+    if (scannerPropertyKey != null) {
+      String value = scannerProperties.get(scannerPropertyKey);
+      return value != null && (scannerPropertyPattern == null || scannerPropertyPattern.matcher(value).matches());
+    }
+    return true;
+  }
+
+  /**
+   * @return the channels to notify, empty if the notification is dropped
+   */
+  List<Channel> getChannels() {
+    return channels;
+  }
+
+  private static Pattern compileGlob(String glob) {
+    String value = StringUtils.trimToNull(glob);
+    if (value == null) {
+      return null;
+    }
+    StringBuilder regex = new StringBuilder();
+    int start = 0;
+    for (int i = value.indexOf('*'); i >= 0; i = value.indexOf('*', start)) {
+      if (i > start) {
+        regex.append(Pattern.quote(value.substring(start, i)));
+      }
+      regex.append(".*");
+      start = i + 1;
+    }
+    if (start < value.length()) {
+      regex.append(Pattern.quote(value.substring(start)));
+    }
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  private static Set<QualityGate.Status> parseStatuses(String value) {
+    if (StringUtils.isBlank(value)) {
+      return Collections.emptySet();
+    }
+    Set<QualityGate.Status> result = EnumSet.noneOf(QualityGate.Status.class);
+    for (String part : value.split(",")) {
+      for (QualityGate.Status status : QualityGate.Status.values()) {
+        if (status.name().equalsIgnoreCase(part.trim())) {
+          result.add(status);
+        }
+      }
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  private static String[] toStrings(String[] rawValues) {
+    String[] result = new String[rawValues.length];
+    for (int i = 0; i < rawValues.length; i++) {
+      result[i] = rawValues[i] == null ? "" : rawValues[i];
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "RoutingRule{" + order + ": " + description + "}";
+  }
+}
@@ -0,0 +1,131 @@
+package com.dadapush.client.sonar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.sonar.api.ce.posttask.QualityGate;
+
+/**
+ * {@link RoutingRule}s compiled for evaluation, rebuilt only when the rules change.
+ * <pre>
+ * 1) every rule gets a bit, its position in the configured order
+ * 2) rules are indexed by project key like {@link ProjectConfigIndex}: exact keys in a hash table, wildcards in a
+ *    {@link PrefixTrie}, each entry holding the bits of its rules
+ * 3) for every branch scope and Quality Gate status the bits of the rules accepting it are precomputed
+ * 4) an evaluation ORs the bits along the project key, ANDs them with the precomputed ones, and only checks branch
+ *    name and scanner property of the remaining rules, in order, until one matches
+ * </pre>
+ * Cost is O(project key length) plus a few words per 64 rules, however many rules exist.
+ * Instances are immutable once built.
+ */
+class RoutingRules {
+
+  private static final BranchScope[] SCOPES = {BranchScope.MAIN, BranchScope.BRANCH, BranchScope.PULL_REQUEST};
+  private static final QualityGate.Status[] STATUSES = QualityGate.Status.values();
+
+  static final RoutingRules EMPTY = new RoutingRules(Collections.emptyList());
+
+  private final RoutingRule[] rules;
+  private final BitSet anyProject = new BitSet();
+  private final Map<String, BitSet> exact = new HashMap<>();
+  private final PrefixTrie<BitSet> wildcards = new PrefixTrie<>();
+  /**
+   * Indexed by scope (in {@link #SCOPES}) and status ordinal, the last status slot standing for an unknown status.
+   */
+  private final BitSet[][] accepted = new BitSet[SCOPES.length][STATUSES.length + 1];
+
+  RoutingRules(List<RoutingRule> rules) {
+    this.rules = rules.toArray(new RoutingRule[0]);
+    for (int i = 0; i < this.rules.length; i++) {
+      String key = this.rules[i].getProjectKey();
+      if (key == null) {
+        anyProject.set(i);
+      } else if (key.endsWith("*")) {
+        wildcards.computeIfAbsent(key.substring(0, key.length() - 1), BitSet::new).set(i);
+      } else {
+        exact.computeIfAbsent(key, k -> new BitSet()).set(i);
+      }
+    }
+    for (int s = 0; s < SCOPES.length; s++) {
+      for (int q = 0; q <= STATUSES.length; q++) {
+        QualityGate.Status status = q < STATUSES.length ? STATUSES[q] : null;
+        BitSet bits = new BitSet(this.rules.length);
+        for (int i = 0; i < this.rules.length; i++) {
+          if (this.rules[i].getBranchScope().includes(SCOPES[s]) && this.rules[i].acceptsStatus(status)) {
+            bits.set(i);
+          }
+        }
+        accepted[s][q] = bits;
+      }
+    }
+  }
+
+  List<RoutingRule> getRules() {
+    return Collections.unmodifiableList(Arrays.asList(rules));
+  }
+
+  boolean isEmpty() {
+    return rules.length == 0;
+  }
+
+  int size() {
+    return rules.length;
+  }
+
+  /**
+   * @param scope scope of the analyzed branch, see {@link BranchScope#of}
+   * @param branchName name of the analyzed branch or pull request, null if unknown
+   * @param status Quality Gate status, null if unknown
+   * @param scannerProperties only asked for if a candidate rule has a scanner property condition
+   * @return the first rule matching the analysis, null if none does
+   */
+  RoutingRule find(String projectKey, BranchScope scope, String branchName, QualityGate.Status status,
+      Supplier<Map<String, String>> scannerProperties) {
+    if (rules.length == 0) {
+      return null;
+    }
+    BitSet candidates = (BitSet) anyProject.clone();
+    PrefixTrie.Node<BitSet> node = wildcards.root();
+    for (int i = 0; node != null; i++) {
+      if (node.getValue() != null) {
+        candidates.or(node.getValue());
+      }
+      node = i < projectKey.length() ? node.child(projectKey.charAt(i)) : null;
+    }
+    BitSet exactRules = exact.get(projectKey);
+    if (exactRules != null) {
+      candidates.or(exactRules);
+    }
+    candidates.and(accepted[scopeIndex(scope)][status == null ? STATUSES.length : status.ordinal()]);
+
+    Map<String, String> properties = null;
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      RoutingRule rule = rules[i];
+      if (properties == null && rule.hasScannerPropertyCondition()) {
+        properties = scannerProperties.get();
+      }
+      if (rule.matchesDetails(branchName, properties == null ? Collections.emptyMap() : properties)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  private static int scopeIndex(BranchScope scope) {
+    for (int i = 0; i < SCOPES.length; i++) {
+      if (SCOPES[i] == scope) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Not the scope of an analysis: " + scope);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(rules);
+  }
+}
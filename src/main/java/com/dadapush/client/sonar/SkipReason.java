@@ -0,0 +1,40 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Why no notification was sent for an analysis.
+ */
+public enum SkipReason {
+
+  /**
+   * The plugin is disabled in general.
+   */
+  DISABLED,
+  /**
+   * No project specific configuration matches the project key.
+   */
+  NO_CONFIG,
+  /**
+   * The project only wants notifications for failed Quality Gates, but it passed.
+   */
+  QG_FAIL_ONLY,
+  /**
+   * The matching project specific configuration has no channel token.
+   */
+  BLANK_TOKEN,
+  /**
+   * No channel of the matching project specific configuration wants to be notified about the Quality Gate status.
+   *
+   * @see Channel
+   */
+  CHANNEL_FILTER,
+  /**
+   * The same notification, or one with the same status, was sent recently.
+   *
+   * @see DedupMode
+   */
+  DUPLICATE,
+  /**
+   * The first {@link RoutingRule} matching the analysis has no channel token.
+   */
+  ROUTED
+}
@@ -0,0 +1,41 @@
+package com.dadapush.client.sonar;
+
+/**
+ * Limits how many notifications are sent to one channel.
+ * <pre>
+ * 1) the bucket holds up to burst tokens and refills at ratePerMinute tokens per minute
+ * 2) every send takes one token, with an empty bucket the notification waits until a token is available
+ * </pre>
+ */
+class TokenBucket {
+
+  private static final double MS_PER_MINUTE = 60_000d;
+
+  private double tokens = -1d;
+  private long lastRefill;
+
+  /**
+   * @return 0 if a token was taken, otherwise how long to wait before asking again
+   */
+  synchronized long acquire(long now, int ratePerMinute, int burst) {
+    int capacity = Math.max(1, burst);
+    if (tokens < 0d) {
+      tokens = capacity;
+    } else {
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerMinute / MS_PER_MINUTE);
+    }
+    lastRefill = now;
+    if (tokens >= 1d) {
+      tokens -= 1d;
+      return 0L;
+    }
+    return Math.max(1L, (long) Math.ceil((1d - tokens) * MS_PER_MINUTE / ratePerMinute));
+  }
+
+  /**
+   * @return true if the bucket would be full at now, so forgetting it changes nothing
+   */
+  synchronized boolean isIdle(long now, int ratePerMinute, int burst) {
+    return tokens + (now - lastRefill) * ratePerMinute / MS_PER_MINUTE >= Math.max(1, burst);
+  }
+}
@@ -0,0 +1,46 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.Branch;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester;
+
+public class BranchScopeTest {
+
+  @Test
+  public void parse_ignores_case_and_defaults_to_any() {
+    assertEquals(BranchScope.PULL_REQUEST, BranchScope.parse(" pull_request "));
+    assertEquals(BranchScope.MAIN, BranchScope.parse("MAIN"));
+    assertEquals(BranchScope.ANY, BranchScope.parse("unknown"));
+    assertEquals(BranchScope.ANY, BranchScope.parse(null));
+  }
+
+  @Test
+  public void scope_of_an_analysis() {
+    assertEquals(BranchScope.MAIN, BranchScope.of(Optional.empty()));
+    Branch main = PostProjectAnalysisTaskTester.newBranchBuilder()
+        .setName("master")
+        .setType(Branch.Type.LONG)
+        .setIsMain(true)
+        .build();
+    assertEquals(BranchScope.MAIN, BranchScope.of(Optional.of(main)));
+    assertEquals(BranchScope.BRANCH, BranchScope.of(Optional.of(TestFixtures.branch("develop", Branch.Type.LONG))));
+    assertEquals(BranchScope.BRANCH,
+        BranchScope.of(Optional.of(TestFixtures.branch("feature/a", Branch.Type.SHORT))));
+    assertEquals(BranchScope.PULL_REQUEST,
+        BranchScope.of(Optional.of(TestFixtures.branch("42", Branch.Type.PULL_REQUEST))));
+  }
+
+  @Test
+  public void any_includes_every_scope() {
+    for (BranchScope scope : BranchScope.values()) {
+      assertTrue(BranchScope.ANY.includes(scope));
+      assertEquals(scope == BranchScope.BRANCH, BranchScope.BRANCH.includes(scope));
+    }
+    assertFalse(BranchScope.MAIN.includes(BranchScope.PULL_REQUEST));
+  }
+}
@@ -0,0 +1,63 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.QualityGate;
+
+public class ChannelTest {
+
+  @Test
+  public void parses_tokens_with_optional_minimum_status() {
+    assertEquals(Arrays.asList(new Channel("teamToken", null), new Channel("onCallToken", QualityGate.Status.ERROR),
+        new Channel("qaToken", QualityGate.Status.WARN)),
+        Channel.parseList("teamToken, onCallToken:ERROR , qaToken : warn"));
+  }
+
+  @Test
+  public void unknown_status_is_part_of_the_token() {
+    assertEquals(Collections.singletonList(new Channel("token:FAILED", null)), Channel.parseList("token:FAILED"));
+    assertEquals(Collections.singletonList(new Channel(":ERROR", null)), Channel.parseList(":ERROR"));
+  }
+
+  @Test
+  public void blank_entries_are_ignored() {
+    assertTrue(Channel.parseList(null).isEmpty());
+    assertTrue(Channel.parseList("  ").isEmpty());
+    assertTrue(Channel.parseList(" , ,").isEmpty());
+    assertEquals(Arrays.asList(new Channel("a", null), new Channel("b", null)), Channel.parseList(",a,, b ,"));
+  }
+
+  @Test
+  public void duplicate_tokens_are_notified_once_with_the_least_restrictive_status() {
+    assertEquals(Arrays.asList(new Channel("a", null), new Channel("b", QualityGate.Status.WARN)),
+        Channel.parseList("a:ERROR, b:ERROR, a, b:WARN"));
+    assertEquals(Collections.singletonList(new Channel("a", QualityGate.Status.WARN)),
+        Channel.parseList("a:WARN, a:ERROR"));
+    assertEquals(Collections.singletonList(new Channel("a", null)), Channel.parseList("a, a"));
+  }
+
+  @Test
+  public void minimum_status_filters_less_severe_quality_gates() {
+    Channel onCall = new Channel("onCallToken", QualityGate.Status.ERROR);
+    assertTrue(onCall.accepts(QualityGate.Status.ERROR));
+    assertFalse(onCall.accepts(QualityGate.Status.WARN));
+    assertFalse(onCall.accepts(QualityGate.Status.OK));
+    // unknown status, e.g. no Quality Gate
+    assertTrue(onCall.accepts(null));
+
+    Channel qa = new Channel("qaToken", QualityGate.Status.WARN);
+    assertTrue(qa.accepts(QualityGate.Status.ERROR));
+    assertTrue(qa.accepts(QualityGate.Status.WARN));
+    assertFalse(qa.accepts(QualityGate.Status.OK));
+
+    Channel team = new Channel("teamToken", null);
+    for (QualityGate.Status status : QualityGate.Status.values()) {
+      assertTrue(team.accepts(status));
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static final int THRESHOLD = 3;
+  private static final long OPEN_MS = 1000L;
+
+  private final CircuitBreaker breaker = new CircuitBreaker("http://localhost");
+
+  private void fail(long now, int times) {
+    for (int i = 0; i < times; i++) {
+      breaker.onFailure(now, THRESHOLD, OPEN_MS);
+    }
+  }
+
+  @Test
+  public void opens_after_threshold_consecutive_failures() {
+    fail(0L, THRESHOLD - 1);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(0L, breaker.acquire(0L, OPEN_MS));
+
+    fail(100L, 1);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(OPEN_MS - 400L, breaker.acquire(500L, OPEN_MS));
+  }
+
+  @Test
+  public void success_resets_the_failure_count() {
+    fail(0L, THRESHOLD - 1);
+    breaker.onSuccess();
+    fail(0L, THRESHOLD - 1);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void lets_one_probe_through_once_open_duration_elapsed() {
+    fail(0L, THRESHOLD);
+
+    assertEquals(0L, breaker.acquire(OPEN_MS, OPEN_MS));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    // the probe is in flight, others wait
+    assertTrue(breaker.acquire(OPEN_MS, OPEN_MS) > 0L);
+  }
+
+  @Test
+  public void successful_probe_closes() {
+    fail(0L, THRESHOLD);
+    breaker.acquire(OPEN_MS, OPEN_MS);
+
+    breaker.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(0L, breaker.acquire(OPEN_MS, OPEN_MS));
+  }
+
+  @Test
+  public void failed_probe_opens_again() {
+    fail(0L, THRESHOLD);
+    breaker.acquire(OPEN_MS, OPEN_MS);
+
+    breaker.onFailure(OPEN_MS + 10L, THRESHOLD, OPEN_MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(OPEN_MS, breaker.acquire(OPEN_MS + 10L, OPEN_MS));
+  }
+}
@@ -0,0 +1,203 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.ce.posttask.QualityGate.EvaluationStatus;
+import org.sonar.api.ce.posttask.QualityGate.Operator;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.measures.CoreMetrics;
+
+/**
+ * Calls {@link DaDaPushPostProjectAnalysisTask#finished} from many threads while another thread keeps changing
+ * the template and the project configurations, and checks every delivered message.
+ * <pre>
+ * 1) no corrupted message: the content is exactly "template version|project key|project key" and was sent to the
+ *    channel token configured for that project
+ * 2) no lost update: every analysis is delivered exactly once
+ * 3) no stale snapshot: once the settings stop changing, the next analysis renders the last template
+ * </pre>
+ */
+public class ConcurrencyStressTest {
+
+  private static final int ANALYSES = 2_000;
+  private static final int CONCURRENCY = 8;
+  private static final int PROJECTS = 20;
+  private static final String TEMPLATE = "|${project.key}|${project.key}";
+  private static final Pattern ANALYSIS_ID = Pattern.compile(":stress-(\\d+)$");
+
+  private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+  private final Map<Integer, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+  private final Set<Integer> finalTemplate = ConcurrentHashMap.newKeySet();
+
+  @Test(timeout = 120_000L)
+  public void concurrent_analyses_and_settings_changes() throws InterruptedException {
+    ConcurrentSettings settings = new ConcurrentSettings(TestFixtures.definitions());
+    settings.setProperty(DaDaPushNotificationProp.ENABLED.property(), true);
+    for (int i = 0; i < PROJECTS; i++) {
+      TestFixtures.projectConfig(settings, Integer.toString(i), "org.example.group-" + i + ":*", "token-" + i);
+    }
+    settings.setProperty(DaDaPushNotificationProp.TEMPLATE.property(), "v0" + TEMPLATE);
+    settings.setProperty(DaDaPushNotificationProp.DELIVERY_QUEUE_CAPACITY.property(), 100);
+    settings.setProperty(DaDaPushNotificationProp.DELIVERY_OVERFLOW_POLICY.property(), OverflowPolicy.BLOCK.name());
+    settings.setProperty(DaDaPushNotificationProp.DELIVERY_BLOCK_TIMEOUT.property(), 60_000);
+    settings.setProperty(DaDaPushNotificationProp.DEDUP_MODE.property(), DedupMode.SUPPRESS_REPEATS.name());
+    settings.setProperty(DaDaPushNotificationProp.DELTA_ENABLED.property(), true);
+    settings.setProperty(DaDaPushNotificationProp.OUTBOX_ENABLED.property(), false);
+
+    MetricCache metricCache = new MetricCache(TestFixtures.i18n());
+    NotificationStats stats = new NotificationStats(metricCache);
+    NotificationDispatcher dispatcher = new NotificationDispatcher(settings, new CheckingSender(settings, stats), stats);
+    DaDaPushPostProjectAnalysisTask task = new DaDaPushPostProjectAnalysisTask(settings, metricCache, dispatcher,
+        stats, new ProjectStateStore(settings));
+    dispatcher.start();
+
+    // changes the template version and adds or removes an unrelated project configuration
+    CountDownLatch callersDone = new CountDownLatch(CONCURRENCY);
+    String configIds = settings.getString(DaDaPushNotificationProp.CONFIG.property());
+    Thread churn = new Thread(() -> {
+      String extraPrefix = DaDaPushNotificationProp.CONFIG.property() + ".extra.";
+      settings.setProperty(extraPrefix + DaDaPushNotificationProp.PROJECT.property(), "org.example:extra");
+      settings.setProperty(extraPrefix + DaDaPushNotificationProp.CHANNEL_TOKEN.property(), "extra");
+      for (int version = 1; callersDone.getCount() > 0; version++) {
+        settings.setProperty(DaDaPushNotificationProp.TEMPLATE.property(), "v" + (version % 2 + 1) + TEMPLATE);
+        settings.setProperty(DaDaPushNotificationProp.CONFIG.property(),
+            version % 3 == 0 ? configIds + ",extra" : configIds);
+        Thread.yield();
+      }
+    }, "settings-churn");
+    churn.start();
+
+    QualityGate qualityGate = TestFixtures.qualityGate(QualityGate.Status.ERROR, TestFixtures.condition(
+        CoreMetrics.NEW_COVERAGE_KEY, EvaluationStatus.ERROR, Operator.LESS_THAN, "50", null, "80"));
+    ExecutorService callers = Executors.newFixedThreadPool(CONCURRENCY);
+    AtomicInteger next = new AtomicInteger();
+    for (int t = 0; t < CONCURRENCY; t++) {
+      callers.execute(() -> {
+        try {
+          for (int i = next.getAndIncrement(); i < ANALYSES; i = next.getAndIncrement()) {
+            TestFixtures.analyze(task, projectKey(i), qualityGate, null, Collections.emptyMap());
+          }
+        } catch (RuntimeException e) {
+          violations.add("finished() failed: " + e);
+        } finally {
+          callersDone.countDown();
+        }
+      });
+    }
+    callers.shutdown();
+    assertTrue(callers.awaitTermination(1, TimeUnit.MINUTES));
+    churn.join();
+
+    // settings are stable now, the next analysis must see the last template
+    settings.setProperty(DaDaPushNotificationProp.TEMPLATE.property(), "final" + TEMPLATE);
+    TestFixtures.analyze(task, projectKey(ANALYSES), qualityGate, null, Collections.emptyMap());
+
+    NotificationDispatcherTest.await(() -> stats.getSent() + stats.getFailed() + stats.getGivenUp() > ANALYSES);
+    dispatcher.stop();
+
+    for (int i = 0; i <= ANALYSES; i++) {
+      AtomicInteger count = deliveries.get(i);
+      if (count == null || count.get() != 1) {
+        violations.add("analysis " + i + " delivered " + (count == null ? 0 : count.get()) + " time(s)");
+      }
+    }
+    assertEquals(Collections.emptyList(), violations.subList(0, Math.min(20, violations.size())));
+    assertEquals(Collections.singleton(ANALYSES), finalTemplate);
+    assertEquals(ANALYSES + 1, stats.getSent());
+  }
+
+  private static String projectKey(int analysis) {
+    return "org.example.group-" + analysis % PROJECTS + ":stress-" + analysis;
+  }
+
+  private void check(PendingMessage message) {
+    String[] parts = message.getBody().getContent().split("\\|", -1);
+    Matcher id = parts.length == 3 ? ANALYSIS_ID.matcher(parts[1]) : null;
+    if (id == null || !id.find() || !parts[1].equals(parts[2]) || !parts[0].matches("v[012]|final")) {
+      violations.add("corrupted content in " + message);
+      return;
+    }
+    int analysis = Integer.parseInt(id.group(1));
+    String project = parts[1].substring("org.example.group-".length(), parts[1].indexOf(':'));
+    if (!("token-" + project).equals(message.getChannelToken())) {
+      violations.add("project " + parts[1] + " sent to channel " + message.getChannelToken());
+    }
+    if (parts[0].equals("final")) {
+      finalTemplate.add(analysis);
+    }
+    deliveries.computeIfAbsent(analysis, k -> new AtomicInteger()).incrementAndGet();
+  }
+
+  /**
+   * Checks and delivers every message, without any HTTP call.
+   */
+  private class CheckingSender extends MessageSender {
+
+    private CheckingSender(MapSettings settings, NotificationStats stats) {
+      super(settings, new ApiClientHolder(settings), stats);
+    }
+
+    @Override
+    DeliveryResult send(PendingMessage message, RetryPolicy retryPolicy) {
+      check(message);
+      return DeliveryResult.DELIVERED;
+    }
+
+    @Override
+    void release() {
+      // no API client
+    }
+  }
+
+  /**
+   * {@link MapSettings} backed by a concurrent map, so that the settings can change while analyses read them, as
+   * they do on a real Compute Engine.
+   */
+  private static class ConcurrentSettings extends MapSettings {
+
+    private final Map<String, String> props = new ConcurrentHashMap<>();
+
+    private ConcurrentSettings(PropertyDefinitions definitions) {
+      super(definitions);
+    }
+
+    @Override
+    protected Optional<String> get(String key) {
+      return Optional.ofNullable(props.get(key));
+    }
+
+    @Override
+    protected void set(String key, String value) {
+      props.put(key, value);
+    }
+
+    @Override
+    protected void remove(String key) {
+      props.remove(key);
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+      return Collections.unmodifiableMap(new HashMap<>(props));
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.MessageException;
+
+public class ConfigSnapshotTest {
+
+    private MapSettings settings;
+
+    @Before
+    public void setUp() {
+        settings = TestFixtures.settings();
+        TestFixtures.projectConfig(settings, "1", "com.example:app", "appToken");
+        TestFixtures.projectConfig(settings, "2", "com.example:*", "groupToken");
+    }
+
+    @Test
+    public void unchanged_settings_return_the_previous_snapshot() {
+        ConfigSnapshot snapshot = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+
+        assertEquals(1L, snapshot.getVersion());
+        assertSame(snapshot, ConfigSnapshot.refresh(settings, snapshot));
+    }
+
+    @Test
+    public void changed_project_config_is_rebuilt_and_others_carried_over() {
+        ConfigSnapshot snapshot = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+        settings.setProperty("dadapush.projectconfig.1.channelToken", "otherToken");
+
+        ConfigSnapshot changed = ConfigSnapshot.refresh(settings, snapshot);
+        assertEquals(2L, changed.getVersion());
+        assertEquals("otherToken", changed.getProjectConfigMap().get("com.example:app").getChannelToken());
+        assertSame(snapshot.getProjectConfigMap().get("com.example:*"),
+                changed.getProjectConfigMap().get("com.example:*"));
+        assertSame(snapshot.getRoutingRules(), changed.getRoutingRules());
+    }
+
+    @Test
+    public void changed_global_setting_keeps_project_configs() {
+        ConfigSnapshot snapshot = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+        settings.setProperty(DaDaPushNotificationProp.DEDUP_MODE.property(), DedupMode.STATUS_CHANGE.name());
+        settings.setProperty(DaDaPushNotificationProp.PRIORITY_METRICS.property(), "new_coverage, new_bugs");
+
+        ConfigSnapshot changed = ConfigSnapshot.refresh(settings, snapshot);
+        assertEquals(2L, changed.getVersion());
+        assertEquals(DedupMode.STATUS_CHANGE, changed.getDedupMode());
+        assertEquals(Arrays.asList("new_coverage", "new_bugs"), changed.getPriorityMetrics());
+        assertSame(snapshot.getProjectConfigIndex(), changed.getProjectConfigIndex());
+        assertSame(snapshot.getDefaultTemplate(), changed.getDefaultTemplate());
+    }
+
+    @Test
+    public void malformed_dedup_ttl_falls_back_to_the_default() {
+        settings.setProperty(DaDaPushNotificationProp.DEDUP_TTL.property(), "1h");
+        assertEquals(ConfigSnapshot.DEFAULT_DEDUP_TTL,
+                ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY).getDedupTtl());
+
+        settings.setProperty(DaDaPushNotificationProp.DEDUP_TTL.property(), " 60000 ");
+        assertEquals(60_000L, ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY).getDedupTtl());
+    }
+
+    @Test
+    public void default_template_is_compiled_when_its_source_changes() {
+        ConfigSnapshot snapshot = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+        assertEquals(MessageTemplate.DEFAULT, snapshot.getDefaultTemplate().getSource());
+
+        settings.setProperty(DaDaPushNotificationProp.TEMPLATE.property(), "${status} ${project.name}");
+        ConfigSnapshot changed = ConfigSnapshot.refresh(settings, snapshot);
+        assertNotSame(snapshot.getDefaultTemplate(), changed.getDefaultTemplate());
+        assertEquals("${status} ${project.name}", changed.getDefaultTemplate().getSource());
+    }
+
+    @Test
+    public void global_settings_default_to_the_property_definitions() {
+        settings.setProperty("sonar.core.serverBaseURL", "http://sonar.example.com");
+        ConfigSnapshot snapshot = ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+
+        assertEquals("https://www.dadapush.com", snapshot.getBasePath());
+        assertEquals(DedupMode.OFF, snapshot.getDedupMode());
+        assertEquals(3_600_000L, snapshot.getDedupTtl());
+        assertEquals(Priority.LOW, snapshot.getPushMinimum());
+        assertEquals("http://sonar.example.com/", snapshot.getSonarServerUrl());
+    }
+
+    @Test(expected = MessageException.class)
+    public void project_config_without_key_is_rejected() {
+        TestFixtures.projectConfig(settings, "3", null, "token");
+        ConfigSnapshot.refresh(settings, ConfigSnapshot.EMPTY);
+    }
+}
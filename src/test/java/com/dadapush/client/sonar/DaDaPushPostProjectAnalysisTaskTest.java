@@ -0,0 +1,155 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.Branch;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.ce.posttask.QualityGate.EvaluationStatus;
+import org.sonar.api.ce.posttask.QualityGate.Operator;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.measures.CoreMetrics;
+
+public class DaDaPushPostProjectAnalysisTaskTest {
+
+  private static final String PROJECT_KEY = "com.example:project";
+
+  private final MapSettings settings = TestFixtures.projectConfig(TestFixtures.settings(), "1", PROJECT_KEY, "token")
+      .setProperty(DaDaPushNotificationProp.ENABLED.property(), true);
+  private final MetricCache metricCache = new MetricCache(TestFixtures.i18n());
+  private final NotificationStats stats = new NotificationStats(metricCache);
+  private final RecordingDispatcher dispatcher = new RecordingDispatcher(settings, stats);
+  private final DaDaPushPostProjectAnalysisTask task = new DaDaPushPostProjectAnalysisTask(settings, metricCache,
+      dispatcher, stats, new ProjectStateStore(settings));
+
+  /**
+   * Accepts or discards every notification, without delivering it.
+   */
+  private static class RecordingDispatcher extends NotificationDispatcher {
+
+    private final List<PendingMessage> submitted = new ArrayList<>();
+    private boolean accept = true;
+
+    private RecordingDispatcher(MapSettings settings, NotificationStats stats) {
+      super(settings, (MessageSender) null, stats);
+    }
+
+    @Override
+    public boolean submit(PendingMessage message) {
+      submitted.add(message);
+      return accept;
+    }
+  }
+
+  private static QualityGate qualityGate(QualityGate.Status status, String coverage) {
+    EvaluationStatus evaluation = status == QualityGate.Status.ERROR ? EvaluationStatus.ERROR : EvaluationStatus.OK;
+    return TestFixtures.qualityGate(status, TestFixtures.condition(CoreMetrics.NEW_COVERAGE_KEY, evaluation,
+        Operator.LESS_THAN, coverage, null, "80"));
+  }
+
+  private void analyze(QualityGate qualityGate, Branch branch) {
+    TestFixtures.analyze(task, PROJECT_KEY, qualityGate, branch, Collections.emptyMap());
+  }
+
+  private String content(int index) {
+    return dispatcher.submitted.get(index).getBody().getContent();
+  }
+
+  @Test
+  public void status_change_suppresses_same_status() {
+    settings.setProperty(DaDaPushNotificationProp.DEDUP_MODE.property(), DedupMode.STATUS_CHANGE.name());
+
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "60"), null);
+    analyze(qualityGate(QualityGate.Status.OK, "90"), null);
+
+    assertEquals(2, dispatcher.submitted.size());
+    assertEquals(1, stats.getSkippedDuplicate());
+  }
+
+  @Test
+  public void suppress_repeats_suppresses_same_content() {
+    settings.setProperty(DaDaPushNotificationProp.DEDUP_MODE.property(), DedupMode.SUPPRESS_REPEATS.name());
+
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "60"), null);
+
+    assertEquals(2, dispatcher.submitted.size());
+  }
+
+  @Test
+  public void discarded_notification_does_not_suppress_the_next() {
+    settings.setProperty(DaDaPushNotificationProp.DEDUP_MODE.property(), DedupMode.SUPPRESS_REPEATS.name());
+
+    dispatcher.accept = false;
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    dispatcher.accept = true;
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+
+    assertEquals(2, dispatcher.submitted.size());
+    assertEquals(1, stats.getSkippedDuplicate());
+  }
+
+  @Test
+  public void branches_and_pull_requests_are_deduplicated_separately() {
+    settings.setProperty(DaDaPushNotificationProp.DEDUP_MODE.property(), DedupMode.STATUS_CHANGE.name());
+
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), TestFixtures.branch("feature/a", Branch.Type.SHORT));
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), TestFixtures.branch("feature/b", Branch.Type.SHORT));
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), TestFixtures.branch("42", Branch.Type.PULL_REQUEST));
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), TestFixtures.branch("feature/a", Branch.Type.SHORT));
+
+    assertEquals(4, dispatcher.submitted.size());
+    assertEquals(1, stats.getSkippedDuplicate());
+  }
+
+  @Test
+  public void delta_is_relative_to_the_last_accepted_notification() {
+    settings.setProperty(DaDaPushNotificationProp.DELTA_ENABLED.property(), true);
+
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    dispatcher.accept = false;
+    analyze(qualityGate(QualityGate.Status.ERROR, "60"), null);
+    dispatcher.accept = true;
+    analyze(qualityGate(QualityGate.Status.ERROR, "70"), null);
+
+    assertEquals(3, dispatcher.submitted.size());
+    assertTrue(content(0).contains("value: 50%"));
+    assertTrue(content(1).contains("value: 50% -> 60%"));
+    assertTrue(content(2).contains("value: 50% -> 70%"));
+  }
+
+  @Test
+  public void delta_is_kept_per_branch() {
+    settings.setProperty(DaDaPushNotificationProp.DELTA_ENABLED.property(), true);
+    Branch feature = TestFixtures.branch("feature/a", Branch.Type.SHORT);
+
+    analyze(qualityGate(QualityGate.Status.ERROR, "50"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "60"), feature);
+    analyze(qualityGate(QualityGate.Status.ERROR, "70"), null);
+    analyze(qualityGate(QualityGate.Status.ERROR, "65"), feature);
+
+    assertFalse(content(1).contains("->"));
+    assertTrue(content(2).contains("value: 50% -> 70%"));
+    assertTrue(content(3).contains("value: 60% -> 65%"));
+  }
+
+  @Test
+  public void subject_names_branch_or_pull_request() {
+    QualityGate qualityGate = qualityGate(QualityGate.Status.OK, "90");
+    assertEquals(PROJECT_KEY,
+        DaDaPushPostProjectAnalysisTask.getSubject(TestFixtures.analysis(PROJECT_KEY, qualityGate)));
+    assertEquals(PROJECT_KEY + "|branch:develop", DaDaPushPostProjectAnalysisTask.getSubject(
+        TestFixtures.analysis(PROJECT_KEY, qualityGate, TestFixtures.branch("develop", Branch.Type.LONG))));
+    assertEquals(PROJECT_KEY + "|pr:42", DaDaPushPostProjectAnalysisTask.getSubject(
+        TestFixtures.analysis(PROJECT_KEY, qualityGate, TestFixtures.branch("42", Branch.Type.PULL_REQUEST))));
+  }
+}
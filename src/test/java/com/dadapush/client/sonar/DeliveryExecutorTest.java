@@ -0,0 +1,97 @@
+package com.dadapush.client.sonar;
+
+import static com.dadapush.client.sonar.NotificationDispatcherTest.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class DeliveryExecutorTest {
+
+  @Test
+  public void platform_pool_bounds_deliveries_in_flight() throws Exception {
+    DeliveryExecutor executor = DeliveryExecutor.create(ExecutorMode.PLATFORM, 2, 10);
+    assertFalse(executor.isVirtual());
+    assertEquals(2, executor.getMaxInFlight());
+
+    int tasks = 6;
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    AtomicInteger done = new AtomicInteger();
+    AtomicInteger submitted = new AtomicInteger();
+    Runnable task = () -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+        done.incrementAndGet();
+      }
+    };
+    Thread submitter = new Thread(() -> {
+      try {
+        for (int i = 0; i < tasks; i++) {
+          executor.execute(task);
+          submitted.incrementAndGet();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    submitter.start();
+    try {
+      // the third delivery waits for a free slot instead of queuing inside the pool
+      await(() -> submitted.get() == 2 && submitter.getState() == Thread.State.WAITING);
+      await(() -> running.get() == 2);
+      assertEquals(2, executor.getInFlight());
+
+      release.countDown();
+      submitter.join(10_000L);
+      assertEquals(tasks, submitted.get());
+      await(() -> done.get() == tasks && executor.getInFlight() == 0);
+      assertEquals(2, maxRunning.get());
+    } finally {
+      release.countDown();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10_000L));
+    }
+  }
+
+  @Test
+  public void falls_back_to_platform_threads_without_virtual_threads() {
+    boolean supported;
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      supported = true;
+    } catch (NoSuchMethodException e) {
+      supported = false;
+    }
+    for (ExecutorMode mode : new ExecutorMode[] {ExecutorMode.AUTO, ExecutorMode.VIRTUAL}) {
+      DeliveryExecutor executor = DeliveryExecutor.create(mode, 3, 50);
+      try {
+        assertEquals(mode.name(), supported, executor.isVirtual());
+        assertEquals(mode.name(), supported ? 50 : 3, executor.getMaxInFlight());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void in_flight_limit_is_at_least_one() {
+    DeliveryExecutor executor = DeliveryExecutor.create(ExecutorMode.PLATFORM, 0, 0);
+    try {
+      assertEquals(1, executor.getMaxInFlight());
+      assertEquals("platform threads, at most 1 in flight", executor.toString());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.ce.posttask.QualityGate.EvaluationStatus;
+import org.sonar.api.ce.posttask.QualityGate.Operator;
+
+public class EvaluatedConditionTest {
+
+  private final MetricCache metricCache = new MetricCache(TestFixtures.i18n());
+
+  @Test
+  public void parses_plain_decimal_numbers() {
+    assertEquals(42.0, EvaluatedCondition.parse("42"), 0.0);
+    assertEquals(-1.5, EvaluatedCondition.parse("-1.5"), 0.0);
+    assertEquals(0.5, EvaluatedCondition.parse("+.5"), 0.0);
+    assertEquals(3.0, EvaluatedCondition.parse("3."), 0.0);
+    assertEquals(1500.0, EvaluatedCondition.parse("1.5E3"), 0.0);
+    assertEquals(0.015, EvaluatedCondition.parse("1.5e-2"), 0.0);
+  }
+
+  @Test
+  public void anything_else_is_nan() {
+    String[] values = {null, "", " 1", "1 ", ".", "-", "1e", "1e+", "1,5", "0x10", "abc", "NaN", "Infinity",
+        "1.2.3", "1d"};
+    for (String value : values) {
+      assertTrue(value, Double.isNaN(EvaluatedCondition.parse(value)));
+    }
+  }
+
+  @Test
+  public void conditions_without_value_have_no_raw_value() {
+    List<EvaluatedCondition> conditions = EvaluatedCondition.of(TestFixtures.qualityGate(QualityGate.Status.OK,
+        TestFixtures.condition("metric", EvaluationStatus.NO_VALUE, Operator.GREATER_THAN, null, "1", "2")),
+        metricCache);
+
+    EvaluatedCondition condition = conditions.get(0);
+    assertFalse(condition.hasValue());
+    assertNull(condition.getRawValue());
+    assertTrue(Double.isNaN(condition.getValue()));
+    assertEquals(1.0, condition.getWarningThreshold(), 0.0);
+    assertEquals(2.0, condition.getErrorThreshold(), 0.0);
+  }
+
+  @Test
+  public void failed_conditions_come_first() {
+    List<EvaluatedCondition> conditions = EvaluatedCondition.of(TestFixtures.qualityGate(QualityGate.Status.ERROR,
+        TestFixtures.condition("no_value", EvaluationStatus.NO_VALUE, Operator.GREATER_THAN, null, null, "1"),
+        TestFixtures.condition("ok", EvaluationStatus.OK, Operator.GREATER_THAN, "0", null, "1"),
+        TestFixtures.condition("warn", EvaluationStatus.WARN, Operator.GREATER_THAN, "2", "1", "3"),
+        TestFixtures.condition("error", EvaluationStatus.ERROR, Operator.GREATER_THAN, "5", null, "1")),
+        metricCache);
+
+    assertEquals("error", conditions.get(0).getMetric().getKey());
+    assertEquals("warn", conditions.get(1).getMetric().getKey());
+    assertEquals("ok", conditions.get(2).getMetric().getKey());
+    assertEquals("no_value", conditions.get(3).getMetric().getKey());
+  }
+
+  @Test
+  public void no_quality_gate_has_no_conditions() {
+    assertTrue(EvaluatedCondition.of(null, metricCache).isEmpty());
+  }
+}
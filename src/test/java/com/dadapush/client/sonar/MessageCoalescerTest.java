@@ -0,0 +1,99 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.dadapush.client.model.MessagePushRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import org.junit.Test;
+
+public class MessageCoalescerTest {
+
+  private static final long HOUR = 3_600_000L;
+
+  private final List<PendingMessage> forwarded = new ArrayList<>();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final MessageCoalescer coalescer = new MessageCoalescer(forwarded::add, scheduler);
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private static PendingMessage message(String token, String status, boolean needPush, Priority priority,
+      long outboxId) {
+    MessagePushRequest body = new MessagePushRequest();
+    body.setTitle(status);
+    body.setContent("content of " + status);
+    body.setNeedPush(needPush);
+    PendingMessage message = new PendingMessage("com.example:" + outboxId, token, "http://localhost", body,
+        status + " Project " + outboxId, priority);
+    message.setOutboxIds(outboxId);
+    return message;
+  }
+
+  @Test
+  public void single_message_is_forwarded_unchanged() {
+    PendingMessage message = message("token", "ERROR", true, Priority.HIGH, 1L);
+    coalescer.add(message, HOUR);
+    coalescer.close();
+
+    assertEquals(1, forwarded.size());
+    assertSame(message, forwarded.get(0));
+  }
+
+  @Test
+  public void messages_of_one_channel_are_merged_into_a_digest() {
+    coalescer.add(message("token", "ERROR", false, Priority.NORMAL, 1L), HOUR);
+    coalescer.add(message("token", "WARN", true, Priority.LOW, 2L), HOUR);
+    coalescer.add(message("token", "OK", false, Priority.HIGH, 3L), HOUR);
+    coalescer.add(message("token", "Unknown Status", false, Priority.LOW, 4L), HOUR);
+    coalescer.add(message("other", "OK", false, Priority.LOW, 5L), HOUR);
+    coalescer.close();
+
+    assertEquals(2, forwarded.size());
+    PendingMessage digest = forwarded.stream().filter(m -> "token".equals(m.getChannelToken())).findFirst().get();
+    assertEquals("4 analyses: 1 failed, 1 warned", digest.getBody().getTitle());
+    assertEquals("ERROR Project 1\nWARN Project 2\nOK Project 3\nUnknown Status Project 4\n",
+        digest.getBody().getContent());
+    assertTrue(digest.getBody().getNeedPush());
+    assertEquals(Priority.HIGH, digest.getPriority());
+    assertEquals("com.example:1", digest.getProjectKey());
+    long[] outboxIds = digest.getOutboxIds();
+    Arrays.sort(outboxIds);
+    assertArrayEquals(new long[] {1L, 2L, 3L, 4L}, outboxIds);
+  }
+
+  @Test
+  public void digest_content_is_cut_at_the_content_limit() {
+    List<PendingMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      messages.add(message("token", "OK", false, Priority.LOW, i));
+    }
+
+    PendingMessage digest = MessageCoalescer.digest(messages);
+    String content = digest.getBody().getContent();
+    assertTrue(content.length() <= PendingMessage.MAX_CONTENT_LENGTH);
+    assertTrue(content, content.matches("(?s).*\\.\\.\\. and \\d+ more\n$"));
+    int listed = content.split("\n").length - 1;
+    assertTrue(content.endsWith("... and " + (100 - listed) + " more\n"));
+    assertEquals("100 analyses: 0 failed", digest.getBody().getTitle());
+  }
+
+  @Test
+  public void messages_are_forwarded_right_away_once_the_scheduler_is_shut_down() {
+    scheduler.shutdown();
+    PendingMessage message = message("token", "ERROR", true, Priority.HIGH, 1L);
+
+    coalescer.add(message, HOUR);
+    assertEquals(1, forwarded.size());
+    assertSame(message, forwarded.get(0));
+  }
+}
@@ -0,0 +1,171 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask.ProjectAnalysis;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.ce.posttask.QualityGate.EvaluationStatus;
+import org.sonar.api.ce.posttask.QualityGate.Operator;
+import org.sonar.api.measures.CoreMetrics;
+
+public class MessageTemplateTest {
+
+  private static final String PROJECT_KEY = "com.example:project";
+
+  private final MessageRenderer renderer = new MessageRenderer(new MetricCache(TestFixtures.i18n()));
+
+  private static String render(MessageTemplate template, MessageTemplate.Values values) {
+    MessageBuffer buffer = MessageBuffer.forCurrentThread(PendingMessage.MAX_CONTENT_LENGTH);
+    template.render(values, buffer);
+    return buffer.toString();
+  }
+
+  private String renderContent(String template, QualityGate qualityGate, boolean qgFailOnly, String serverUrl) {
+    ProjectAnalysis analysis = TestFixtures.analysis(PROJECT_KEY, qualityGate);
+    ProjectConfig projectConfig = new ProjectConfig(PROJECT_KEY, "token", qgFailOnly);
+    return renderer.renderContent(MessageTemplate.compile(template), analysis, projectConfig, serverUrl);
+  }
+
+  private static QualityGate failedQualityGate() {
+    return TestFixtures.qualityGate(QualityGate.Status.ERROR,
+        TestFixtures.condition(CoreMetrics.NEW_COVERAGE_KEY, EvaluationStatus.ERROR, Operator.LESS_THAN,
+            "65.4321", null, "80"),
+        TestFixtures.condition(CoreMetrics.NEW_BUGS_KEY, EvaluationStatus.OK, Operator.GREATER_THAN,
+            "0", "1", "3"),
+        TestFixtures.condition(CoreMetrics.NEW_SQALE_DEBT_RATIO_KEY, EvaluationStatus.NO_VALUE,
+            Operator.GREATER_THAN, null, null, "5"));
+  }
+
+  @Test
+  public void substitutes_variables_and_keeps_literals() {
+    MessageTemplate template = MessageTemplate.compile("[${project.key}] ${status}: ${unknown} $ ${status");
+    String rendered = render(template, (variable, out) -> {
+      out.append(variable.name());
+      return true;
+    });
+    assertEquals("[PROJECT_KEY] STATUS: ${unknown} $ ${status", rendered);
+    assertEquals("[${project.key}] ${status}: ${unknown} $ ${status", template.getSource());
+  }
+
+  @Test
+  public void absent_variable_drops_following_line_break_only() {
+    MessageTemplate template = MessageTemplate.compile("a\n${conditions}\nb\n${conditions}x\n");
+    String rendered = render(template, (variable, out) -> false);
+    assertEquals("a\nb\nx\n", rendered);
+  }
+
+  @Test
+  public void stops_at_buffer_limit() {
+    List<MessageTemplate.Variable> rendered = new ArrayList<>();
+    MessageTemplate template = MessageTemplate.compile("${project.name}${project.key}${status}");
+    MessageBuffer buffer = MessageBuffer.forCurrentThread(5);
+    template.render((variable, out) -> {
+      rendered.add(variable);
+      out.append("0123456789");
+      return true;
+    }, buffer);
+    assertEquals("01234", buffer.toString());
+    assertEquals(1, rendered.size());
+  }
+
+  @Test
+  public void default_template_renders_like_before_templates() {
+    // the text built by the notification task before templates existed
+    String expected = "Project: Project " + PROJECT_KEY + "\n"
+        + "Status: ERROR\n"
+        + "new_coverage: ERROR\nvalue: 65.43%, error if <80%\n"
+        + "new_bugs: OK\nvalue: 0, warning if >1, error if >3\n"
+        + "new_sqale_debt_ratio\nNO_VALUE\n";
+    assertEquals(expected, renderContent(MessageTemplate.DEFAULT, failedQualityGate(), false, null));
+  }
+
+  @Test
+  public void default_template_renders_failed_conditions_only_like_before_templates() {
+    String expected = "Project: Project " + PROJECT_KEY + "\n"
+        + "Status: ERROR\n"
+        + "new_coverage: ERROR\nvalue: 65.43%, error if <80%\n";
+    assertEquals(expected, renderContent(MessageTemplate.DEFAULT, failedQualityGate(), true, null));
+  }
+
+  @Test
+  public void default_template_renders_missing_quality_gate_like_before_templates() {
+    assertEquals("Project: Project " + PROJECT_KEY + "\nStatus: Unknown\n",
+        renderContent(MessageTemplate.DEFAULT, null, false, null));
+  }
+
+  @Test
+  public void renders_project_url_only_with_server_url() {
+    String template = "${project.name} ${project.url}";
+    assertEquals("Project " + PROJECT_KEY + " http://sonar/dashboard?id=" + PROJECT_KEY,
+        renderContent(template, failedQualityGate(), false, "http://sonar/"));
+    assertEquals("Project " + PROJECT_KEY + " ", renderContent(template, failedQualityGate(), false, null));
+  }
+
+  /**
+   * @return the rendered failed condition on metricKey
+   */
+  private String renderCondition(String metricKey, String value, String warningThreshold, String errorThreshold) {
+    return renderContent("${conditions}", TestFixtures.qualityGate(QualityGate.Status.ERROR, TestFixtures.condition(
+        metricKey, EvaluationStatus.ERROR, Operator.GREATER_THAN, value, warningThreshold, errorThreshold)),
+        false, null);
+  }
+
+  @Test
+  public void formats_percentages() {
+    assertEquals("new_duplicated_lines_density: ERROR\nvalue: 12.35%, warning if >3%, error if >5.5%",
+        renderCondition(CoreMetrics.NEW_DUPLICATED_LINES_DENSITY_KEY, "12.3456", "3", "5.5"));
+  }
+
+  @Test
+  public void formats_ratings_as_letters() {
+    assertEquals("new_maintainability_rating: ERROR\nvalue: E, warning if >B, error if >C",
+        renderCondition(CoreMetrics.NEW_MAINTAINABILITY_RATING_KEY, "5", "2", "3"));
+    // out of A to E, or not a number
+    assertEquals("new_reliability_rating: ERROR\nvalue: 7, error if >0",
+        renderCondition(CoreMetrics.NEW_RELIABILITY_RATING_KEY, "7", null, "0"));
+    assertEquals("new_security_rating: ERROR\nvalue: x, error if >A",
+        renderCondition(CoreMetrics.NEW_SECURITY_RATING_KEY, "x", null, "1"));
+  }
+
+  @Test
+  public void formats_durations_in_days_of_eight_hours() {
+    assertEquals("new_technical_debt: ERROR\nvalue: 1d 2h 5min, warning if >1h, error if >2d",
+        renderCondition(CoreMetrics.NEW_TECHNICAL_DEBT_KEY, "605", "60", "960"));
+    assertEquals("new_technical_debt: ERROR\nvalue: 0min, error if >1d 30min",
+        renderCondition(CoreMetrics.NEW_TECHNICAL_DEBT_KEY, "0", null, "510"));
+  }
+
+  @Test
+  public void renders_values_which_are_not_numbers_as_they_are() {
+    assertEquals("new_coverage: ERROR\nvalue: NaN, error if >80%",
+        renderCondition(CoreMetrics.NEW_COVERAGE_KEY, "", null, "80"));
+    assertEquals("new_coverage: ERROR\nvalue: n/a, error if >80%",
+        renderCondition(CoreMetrics.NEW_COVERAGE_KEY, "n/a", null, "80"));
+    assertEquals("custom_metric: ERROR\nvalue: 1.23456, error if >1",
+        renderCondition("custom_metric", "1.23456", null, "1"));
+  }
+
+  @Test
+  public void renders_conditions_without_value() {
+    assertEquals("new_coverage\nNO_VALUE", renderContent("${conditions}",
+        TestFixtures.qualityGate(QualityGate.Status.OK, TestFixtures.condition(CoreMetrics.NEW_COVERAGE_KEY,
+            EvaluationStatus.NO_VALUE, Operator.LESS_THAN, null, null, "80")), false, null));
+  }
+
+  @Test
+  public void content_is_cut_at_maximum_length() {
+    QualityGate.Condition[] conditions = new QualityGate.Condition[100];
+    for (int i = 0; i < conditions.length; i++) {
+      conditions[i] = TestFixtures.condition("metric_" + i, EvaluationStatus.ERROR, Operator.GREATER_THAN,
+          "10", null, "5");
+    }
+    String content = renderContent(MessageTemplate.DEFAULT,
+        TestFixtures.qualityGate(QualityGate.Status.ERROR, conditions), false, null);
+    assertEquals(PendingMessage.MAX_CONTENT_LENGTH, content.length());
+    assertTrue(content.startsWith("Project: Project " + PROJECT_KEY + "\nStatus: ERROR\nmetric_0: ERROR\n"));
+  }
+}
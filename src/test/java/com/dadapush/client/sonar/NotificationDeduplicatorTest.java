@@ -0,0 +1,131 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class NotificationDeduplicatorTest {
+
+  private static final long TTL = 60_000L;
+  private static final String SUBJECT = "com.example:project";
+
+  private final NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+
+  @Test
+  public void off_never_suppresses_nor_remembers() {
+    assertTrue(deduplicator.checkAndRecord(DedupMode.OFF, TTL, 0L, SUBJECT, "token", "ERROR", 1L));
+    assertFalse(deduplicator.isRepeated(DedupMode.OFF, TTL, 1L, SUBJECT, "token", "ERROR", 1L));
+    assertEquals(0, deduplicator.size());
+  }
+
+  @Test
+  public void suppress_repeats_compares_fingerprints() {
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L);
+    assertTrue(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "token", "ERROR", 1L));
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "token", "ERROR", 2L));
+  }
+
+  @Test
+  public void status_change_compares_statuses() {
+    deduplicator.checkAndRecord(DedupMode.STATUS_CHANGE, TTL, 0L, SUBJECT, "token", "ERROR", 1L);
+    assertTrue(deduplicator.isRepeated(DedupMode.STATUS_CHANGE, TTL, 1L, SUBJECT, "token", "ERROR", 2L));
+    assertFalse(deduplicator.isRepeated(DedupMode.STATUS_CHANGE, TTL, 1L, SUBJECT, "token", "OK", 1L));
+  }
+
+  @Test
+  public void checking_does_not_remember() {
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L));
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "token", "ERROR", 1L));
+    assertEquals(0, deduplicator.size());
+  }
+
+  @Test
+  public void entries_expire_after_ttl() {
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L);
+    assertTrue(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, TTL - 1, SUBJECT, "token", "ERROR", 1L));
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, TTL, SUBJECT, "token", "ERROR", 1L));
+  }
+
+  @Test
+  public void subjects_and_channels_are_independent() {
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L);
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT + "|branch:feature", "token",
+        "ERROR", 1L));
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "other", "ERROR", 1L));
+  }
+
+  @Test
+  public void check_and_record_suppresses_repeats() {
+    assertTrue(deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L));
+    assertFalse(deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "token", "ERROR", 1L));
+    assertTrue(deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 2L, SUBJECT, "token", "ERROR", 2L));
+  }
+
+  @Test
+  public void discarded_restores_the_previous_notification() {
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L);
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "token", "ERROR", 2L);
+    deduplicator.discarded(DedupMode.SUPPRESS_REPEATS, 1L, SUBJECT, "token", "ERROR", 2L);
+
+    assertFalse(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 2L, SUBJECT, "token", "ERROR", 2L));
+    assertTrue(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 2L, SUBJECT, "token", "ERROR", 1L));
+
+    deduplicator.discarded(DedupMode.SUPPRESS_REPEATS, 0L, SUBJECT, "token", "ERROR", 1L);
+    assertEquals(0, deduplicator.size());
+  }
+
+  @Test
+  public void discarded_keeps_a_newer_notification() {
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT, "token", "ERROR", 1L);
+    deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 1L, SUBJECT, "token", "ERROR", 2L);
+    deduplicator.discarded(DedupMode.SUPPRESS_REPEATS, 0L, SUBJECT, "token", "ERROR", 1L);
+
+    assertTrue(deduplicator.isRepeated(DedupMode.SUPPRESS_REPEATS, TTL, 2L, SUBJECT, "token", "ERROR", 2L));
+  }
+
+  @Test
+  public void concurrent_workers_send_the_same_notification_once() throws Exception {
+    for (int round = 0; round < 1_000; round++) {
+      String subject = SUBJECT + round;
+      CyclicBarrier barrier = new CyclicBarrier(2);
+      AtomicInteger sends = new AtomicInteger();
+      Runnable worker = () -> {
+        try {
+          barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+          throw new IllegalStateException(e);
+        }
+        if (deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, subject, "token", "ERROR", 1L)) {
+          sends.incrementAndGet();
+        }
+      };
+      Thread first = new Thread(worker);
+      Thread second = new Thread(worker);
+      first.start();
+      second.start();
+      first.join();
+      second.join();
+      assertEquals(1, sends.get());
+    }
+  }
+
+  @Test
+  public void fingerprint_separates_values() {
+    assertEquals(NotificationDeduplicator.fingerprint("a", "b"), NotificationDeduplicator.fingerprint("a", "b"));
+    assertNotEquals(NotificationDeduplicator.fingerprint("ab", "c"), NotificationDeduplicator.fingerprint("a", "bc"));
+  }
+
+  @Test
+  public void size_is_bounded() {
+    for (int i = 0; i < NotificationDeduplicator.MAX_ENTRIES * 2; i++) {
+      deduplicator.checkAndRecord(DedupMode.SUPPRESS_REPEATS, TTL, 0L, SUBJECT + i, "token", "ERROR", i);
+    }
+    assertTrue(deduplicator.size() <= NotificationDeduplicator.MAX_ENTRIES);
+  }
+}
@@ -0,0 +1,234 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.dadapush.client.model.MessagePushRequest;
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.internal.MapSettings;
+
+public class NotificationDispatcherTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private MapSettings settings;
+  private NotificationStats stats;
+  private ScriptedSender sender;
+  private NotificationDispatcher dispatcher;
+
+  @Before
+  public void setUp() {
+    settings = TestFixtures.settings();
+    settings.setProperty(DaDaPushNotificationProp.OUTBOX_ENABLED.property(), false);
+    settings.setProperty(DaDaPushNotificationProp.CIRCUIT_FAILURE_THRESHOLD.property(), 1);
+    settings.setProperty(DaDaPushNotificationProp.CIRCUIT_OPEN_DURATION.property(), 200);
+    settings.setProperty(DaDaPushNotificationProp.RETRY_MAX_ATTEMPTS.property(), 2);
+    settings.setProperty(DaDaPushNotificationProp.RETRY_INITIAL_BACKOFF.property(), 10);
+    settings.setProperty(DaDaPushNotificationProp.RETRY_MAX_BACKOFF.property(), 10);
+    stats = new NotificationStats(new MetricCache(TestFixtures.i18n()));
+    sender = new ScriptedSender(settings, stats);
+    dispatcher = new NotificationDispatcher(settings, sender, stats);
+    dispatcher.start();
+  }
+
+  @After
+  public void tearDown() {
+    dispatcher.stop();
+  }
+
+  private static PendingMessage message() {
+    MessagePushRequest body = new MessagePushRequest();
+    body.setTitle("ERROR");
+    body.setContent("content");
+    return new PendingMessage("com.example:app", "token", "http://localhost", body, "ERROR app", Priority.HIGH);
+  }
+
+  @Test
+  public void waiting_for_an_open_circuit_breaker_uses_no_attempt() throws InterruptedException {
+    // the failure opens the breaker for 200 ms, the retry after 10 ms has to wait for it
+    sender.script.add(DeliveryResult.RETRYABLE_FAILURE);
+
+    dispatcher.submit(message());
+    awaitDone();
+    assertEquals(1L, stats.getSent());
+    assertEquals(0L, stats.getGivenUp());
+    assertEquals(2, sender.calls.get());
+  }
+
+  @Test
+  public void unexpected_exception_is_retried_and_reopens_the_breaker() throws InterruptedException {
+    sender.script.add(new IllegalStateException("unexpected answer"));
+
+    dispatcher.submit(message());
+    awaitDone();
+    assertEquals(1L, stats.getSent());
+    assertEquals(1L, stats.getRetries());
+    assertEquals(2, sender.calls.get());
+  }
+
+  @Test
+  public void waiting_for_an_open_circuit_breaker_is_bounded() throws InterruptedException {
+    settings.setProperty(DaDaPushNotificationProp.CIRCUIT_OPEN_DURATION.property(), 60_000);
+    settings.setProperty(DaDaPushNotificationProp.CIRCUIT_MAX_DEFERRAL.property(), 100);
+    sender.script.add(DeliveryResult.RETRYABLE_FAILURE);
+
+    dispatcher.submit(message());
+    awaitDone();
+    assertEquals(0L, stats.getSent());
+    assertEquals(1L, stats.getGivenUp());
+    assertEquals(1, sender.calls.get());
+  }
+
+  @Test
+  public void pending_retry_is_counted_as_dropped_on_stop_without_outbox() throws InterruptedException {
+    settings.setProperty(DaDaPushNotificationProp.RETRY_INITIAL_BACKOFF.property(), 60_000);
+    settings.setProperty(DaDaPushNotificationProp.RETRY_MAX_BACKOFF.property(), 60_000);
+    sender.script.add(DeliveryResult.RETRYABLE_FAILURE);
+
+    dispatcher.submit(message());
+    await(() -> stats.getRetries() == 1L);
+    dispatcher.stop();
+
+    assertEquals(1L, stats.getDropped());
+    assertEquals(0L, stats.getSent());
+    assertEquals(1, sender.calls.get());
+  }
+
+  @Test
+  public void release_does_not_block_the_next_notification() throws InterruptedException {
+    CountDownLatch gate = new CountDownLatch(1);
+    sender.script.add(gate);
+    dispatcher.submit(message());
+    await(() -> sender.calls.get() == 1);
+
+    long start = System.nanoTime();
+    dispatcher.release();
+    dispatcher.submit(message());
+    // the new delivery sends while the released one is still busy
+    await(() -> stats.getSent() == 1L);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+    gate.countDown();
+    await(() -> stats.getSent() == 2L);
+    // only the last release drops the API client
+    dispatcher.release();
+    await(() -> sender.releases.get() == 1);
+    dispatcher.stop();
+    assertEquals(1, sender.releases.get());
+  }
+
+  @Test
+  public void accepted_notifications_are_sent_despite_concurrent_releases() throws InterruptedException {
+    int threads = 4;
+    int messagesPerThread = 500;
+    // nothing accepted is evicted from the queue
+    settings.setProperty(DaDaPushNotificationProp.DELIVERY_QUEUE_CAPACITY.property(), threads * messagesPerThread);
+    AtomicInteger accepted = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    CountDownLatch submitted = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < messagesPerThread; i++) {
+          (dispatcher.submit(message()) ? accepted : rejected).incrementAndGet();
+        }
+        submitted.countDown();
+      }).start();
+    }
+    while (submitted.getCount() > 0) {
+      dispatcher.release();
+      Thread.sleep(1L);
+    }
+    // released deliveries drain in the background
+    await(() -> stats.getSent() + stats.getDropped() >= threads * messagesPerThread);
+
+    assertEquals(threads * messagesPerThread, accepted.get() + rejected.get());
+    assertEquals(accepted.get(), stats.getSent());
+    assertEquals(rejected.get(), stats.getDropped());
+  }
+
+  @Test
+  public void outbox_is_taken_over_on_release_and_left_empty() throws Exception {
+    File dataDirectory = temporaryFolder.newFolder();
+    File outboxDirectory = new File(new File(dataDirectory, "dadapush"), "outbox");
+    settings.setProperty(DaDaPushNotificationProp.OUTBOX_ENABLED.property(), true);
+    settings.setProperty("sonar.path.data", dataDirectory.getAbsolutePath());
+    TestFixtures.projectConfig(settings, "1", "com.example:app", "token");
+    CountDownLatch gate = new CountDownLatch(1);
+    sender.script.add(gate);
+    dispatcher.submit(message());
+    await(() -> sender.calls.get() == 1);
+
+    dispatcher.release();
+    dispatcher.submit(message());
+    await(() -> stats.getSent() == 1L);
+    gate.countDown();
+    await(() -> stats.getSent() == 2L);
+    dispatcher.stop();
+
+    // nothing was recovered and sent twice, and a clean stop leaves nothing to recover
+    assertEquals(2, sender.calls.get());
+    assertFalse(Outbox.hasEntries(outboxDirectory));
+  }
+
+  private void awaitDone() throws InterruptedException {
+    await(() -> stats.getSent() + stats.getFailed() + stats.getGivenUp() > 0);
+  }
+
+  static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue("timed out", System.nanoTime() < deadline);
+      Thread.sleep(10L);
+    }
+  }
+
+  /**
+   * Answers with the scripted results or exceptions, waits for scripted latches, then delivers everything.
+   */
+  static class ScriptedSender extends MessageSender {
+
+    final Queue<Object> script = new ConcurrentLinkedQueue<>();
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger releases = new AtomicInteger();
+
+    ScriptedSender(MapSettings settings, NotificationStats stats) {
+      super(settings, new ApiClientHolder(settings), stats);
+    }
+
+    @Override
+    DeliveryResult send(PendingMessage message, RetryPolicy retryPolicy) {
+      calls.incrementAndGet();
+      Object next = script.poll();
+      if (next instanceof CountDownLatch) {
+        try {
+          ((CountDownLatch) next).await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return DeliveryResult.DELIVERED;
+      }
+      if (next instanceof RuntimeException) {
+        throw (RuntimeException) next;
+      }
+      return next == null ? DeliveryResult.DELIVERED : (DeliveryResult) next;
+    }
+
+    @Override
+    void release() {
+      releases.incrementAndGet();
+    }
+  }
+}
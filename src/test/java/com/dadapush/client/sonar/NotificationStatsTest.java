@@ -0,0 +1,139 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+public class NotificationStatsTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final NotificationStats stats = new NotificationStats(new MetricCache(TestFixtures.i18n()));
+
+  @Test
+  public void histogram_reports_bucket_bounds_capped_by_max() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0d, histogram.getPercentileMillis(0.99d), 0d);
+    for (int i = 0; i < 90; i++) {
+      histogram.record(MS);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(100 * MS);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(10.9d, histogram.getMeanMillis(), 1e-9d);
+    assertEquals(100d, histogram.getMaxMillis(), 0d);
+    // 1ms falls in the bucket below 2^20ns
+    assertEquals((1 << 20) / 1_000_000d, histogram.getPercentileMillis(0.5d), 0d);
+    assertEquals((1 << 20) / 1_000_000d, histogram.getPercentileMillis(0.9d), 0d);
+    // the bucket of 100ms ends at 2^27ns, above the max
+    assertEquals(100d, histogram.getPercentileMillis(0.91d), 0d);
+    assertEquals(100d, histogram.getPercentileMillis(0.99d), 0d);
+  }
+
+  @Test
+  public void histogram_clamps_negative_durations() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5L);
+    histogram.record(0L);
+    assertEquals(2, histogram.getCount());
+    assertEquals(0d, histogram.getMaxMillis(), 0d);
+    assertEquals(0d, histogram.getPercentileMillis(1d), 0d);
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0d, histogram.getMeanMillis(), 0d);
+  }
+
+  @Test
+  public void reports_counters_and_latencies() {
+    stats.sent();
+    stats.sent();
+    stats.sent();
+    stats.failed();
+    stats.givenUp();
+    stats.retried();
+    stats.retried();
+    stats.dropped();
+    stats.rateLimited();
+    stats.skipped(SkipReason.DUPLICATE);
+    stats.skipped(SkipReason.DUPLICATE);
+    stats.skipped(SkipReason.ROUTED);
+    for (int i = 0; i < 99; i++) {
+      stats.httpLatency().record(MS);
+    }
+    stats.httpLatency().record(500 * MS);
+    stats.serializeLatency().record(2 * MS);
+    stats.serializeLatency().record(2 * MS);
+    for (int i = 0; i < 4; i++) {
+      stats.serializationReused();
+    }
+    stats.payloadSent(1000, 400);
+    stats.payloadSent(100, 100);
+
+    assertEquals(3, stats.getSent());
+    assertEquals(1, stats.getFailed());
+    assertEquals(1, stats.getGivenUp());
+    assertEquals(2, stats.getRetries());
+    assertEquals(1, stats.getDropped());
+    assertEquals(1, stats.getRateLimited());
+    assertEquals(2, stats.getSkippedDuplicate());
+    assertEquals(1, stats.getSkippedRouted());
+    assertEquals(0, stats.getSkippedNoConfig());
+    assertEquals((1 << 20) / 1_000_000d, stats.getHttpP50Millis(), 0d);
+    assertEquals((1 << 20) / 1_000_000d, stats.getHttpP99Millis(), 0d);
+    assertEquals(500d, stats.getHttpMaxMillis(), 0d);
+    assertEquals(0d, stats.getRenderP99Millis(), 0d);
+    assertEquals(2, stats.getSerializations());
+    assertEquals(4, stats.getSerializationsSaved());
+    assertEquals(8d, stats.getSerializationSavedMillis(), 1e-9d);
+    assertEquals(1100, stats.getPayloadBytes());
+    assertEquals(500, stats.getWireBytes());
+
+    stats.reset();
+    assertEquals(0, stats.getSent());
+    assertEquals(0, stats.getSkippedDuplicate());
+    assertEquals(0d, stats.getHttpMaxMillis(), 0d);
+    assertEquals(0, stats.getSerializations());
+    assertEquals(0, stats.getWireBytes());
+  }
+
+  @Test
+  public void queue_depth_is_read_from_the_supplier() {
+    assertEquals(0, stats.getQueueDepth());
+    AtomicInteger depth = new AtomicInteger(7);
+    stats.setQueueDepthSupplier(depth::get);
+    assertEquals(7, stats.getQueueDepth());
+    depth.set(3);
+    assertEquals(3, stats.getQueueDepth());
+    assertTrue(stats.getSummary().contains("queueDepth=3"));
+  }
+
+  @Test
+  public void registers_as_mbean() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(NotificationStats.OBJECT_NAME);
+    stats.start();
+    try {
+      stats.sent();
+      stats.httpLatency().record(100 * MS);
+      stats.setQueueDepthSupplier(() -> 5);
+      assertEquals(1L, server.getAttribute(name, "Sent"));
+      assertEquals(5, server.getAttribute(name, "QueueDepth"));
+      assertEquals(100d, server.getAttribute(name, "HttpP99Millis"));
+
+      server.invoke(name, "reset", null, null);
+      assertEquals(0L, server.getAttribute(name, "Sent"));
+    } finally {
+      stats.stop();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+}
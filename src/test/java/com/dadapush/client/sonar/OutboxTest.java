@@ -0,0 +1,309 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.dadapush.client.model.MessagePushRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.CRC32;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutboxTest {
+
+  private static final long SYNC_INTERVAL = 3_600_000L;
+  private static final String TOKEN = "secret-channel-token";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final Map<String, String> channelTokens = new HashMap<>(
+      Collections.singletonMap(Outbox.channelReference(TOKEN), TOKEN));
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  private static PendingMessage message(int i, String content) {
+    MessagePushRequest body = new MessagePushRequest();
+    body.setTitle("ERROR");
+    body.setContent(content);
+    body.setNeedPush(i % 2 == 0);
+    return new PendingMessage("com.example:project-" + i, TOKEN, "http://localhost", body,
+        "ERROR Project " + i, Priority.values()[i % Priority.values().length]);
+  }
+
+  private Outbox open(File directory, List<PendingMessage> recovered) throws IOException {
+    Outbox outbox = Outbox.open(directory, channelTokens::get, recovered);
+    outbox.scheduleSync(scheduler, SYNC_INTERVAL);
+    return outbox;
+  }
+
+  private static List<File> segments(File directory) {
+    File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+    List<File> result = new ArrayList<>(Arrays.asList(files == null ? new File[0] : files));
+    Collections.sort(result);
+    return result;
+  }
+
+  @Test
+  public void replays_unacknowledged_messages_in_order() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    List<PendingMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      PendingMessage message = message(i, "content " + i);
+      outbox.append(message);
+      messages.add(message);
+    }
+    outbox.ack(messages.get(1).getOutboxIds());
+    outbox.close();
+
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+
+    assertEquals(3, recovered.size());
+    int[] expected = {0, 2, 3};
+    for (int i = 0; i < expected.length; i++) {
+      PendingMessage original = messages.get(expected[i]);
+      PendingMessage replayed = recovered.get(i);
+      assertEquals(original.getProjectKey(), replayed.getProjectKey());
+      assertEquals(TOKEN, replayed.getChannelToken());
+      assertEquals(original.getBasePath(), replayed.getBasePath());
+      assertEquals(original.getBody().getTitle(), replayed.getBody().getTitle());
+      assertEquals(original.getBody().getContent(), replayed.getBody().getContent());
+      assertEquals(original.getBody().getNeedPush(), replayed.getBody().getNeedPush());
+      assertEquals(original.getSummary(), replayed.getSummary());
+      assertEquals(original.getPriority(), replayed.getPriority());
+      assertEquals(1, replayed.getOutboxIds().length);
+    }
+  }
+
+  @Test
+  public void replayed_messages_are_persisted_again() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    outbox.append(message(0, "content"));
+    outbox.close();
+
+    open(directory, new ArrayList<>()).close();
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+
+    assertEquals(1, recovered.size());
+    assertEquals(1, segments(directory).size());
+  }
+
+  @Test
+  public void close_deletes_segments_once_everything_is_acknowledged() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    PendingMessage message = message(0, "content");
+    outbox.append(message);
+    outbox.ack(message.getOutboxIds());
+    outbox.close();
+
+    assertTrue(segments(directory).isEmpty());
+    assertFalse(Outbox.hasEntries(directory));
+  }
+
+  @Test
+  public void does_not_write_channel_token() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    outbox.append(message(0, "content"));
+    outbox.close();
+
+    for (File segment : segments(directory)) {
+      String bytes = new String(Files.readAllBytes(segment.toPath()), StandardCharsets.ISO_8859_1);
+      assertFalse(bytes.contains(TOKEN));
+    }
+  }
+
+  @Test
+  public void drops_messages_of_channels_no_longer_configured() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    outbox.append(message(0, "content"));
+    outbox.close();
+
+    channelTokens.clear();
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+    assertTrue(recovered.isEmpty());
+
+    channelTokens.put(Outbox.channelReference(TOKEN), TOKEN);
+    open(directory, recovered).close();
+    assertTrue(recovered.isEmpty());
+  }
+
+  /**
+   * Appends an ADD record with a valid checksum to segment, as written by {@link Outbox#append}.
+   */
+  private static void appendRecord(File segment, long id, String channel, int priority) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(payload)) {
+      for (String value : new String[] {"com.example:project", channel, "http://localhost", "ERROR", "content"}) {
+        out.writeBoolean(true);
+        out.writeUTF(value);
+      }
+      out.writeBoolean(false);
+      out.writeBoolean(false);
+      out.writeByte(priority);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload.toByteArray());
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(segment, true))) {
+      out.writeByte(1);
+      out.writeLong(id);
+      out.writeInt(payload.size());
+      out.write(payload.toByteArray());
+      out.writeLong(crc.getValue());
+    }
+  }
+
+  @Test
+  public void does_not_recover_plain_channel_tokens() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    appendRecord(new File(directory, "segment-0000000001.log"), 1L, TOKEN, Priority.HIGH.ordinal());
+
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+    assertTrue(recovered.isEmpty());
+  }
+
+  @Test
+  public void ignores_rest_of_segment_after_unknown_priority() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    File segment = new File(directory, "segment-0000000001.log");
+    String reference = Outbox.channelReference(TOKEN);
+    appendRecord(segment, 1L, reference, Priority.HIGH.ordinal());
+    appendRecord(segment, 2L, reference, Priority.values().length);
+    appendRecord(segment, 3L, reference, Priority.LOW.ordinal());
+
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+    assertEquals(1, recovered.size());
+    assertEquals(Priority.HIGH, recovered.get(0).getPriority());
+    assertEquals(TOKEN, recovered.get(0).getChannelToken());
+  }
+
+  @Test
+  public void ignores_rest_of_segment_after_corrupted_record() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    outbox.append(message(0, "first"));
+    outbox.append(message(1, "second"));
+    outbox.append(message(2, "third"));
+    outbox.close();
+
+    File segment = segments(directory).get(0);
+    byte[] bytes = Files.readAllBytes(segment.toPath());
+    int second = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("second");
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.seek(second);
+      file.write('S');
+    }
+
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+    assertEquals(1, recovered.size());
+    assertEquals("first", recovered.get(0).getBody().getContent());
+  }
+
+  @Test
+  public void ignores_record_torn_by_crash() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    outbox.append(message(0, "first"));
+    outbox.append(message(1, "second"));
+    outbox.close();
+
+    File segment = segments(directory).get(0);
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.setLength(file.length() - 3);
+    }
+
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+    assertEquals(1, recovered.size());
+    assertEquals("first", recovered.get(0).getBody().getContent());
+  }
+
+  @Test
+  public void deletes_rolled_segments_once_all_their_entries_are_acknowledged() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    Outbox outbox = open(directory, new ArrayList<>());
+    char[] chars = new char[60_000];
+    Arrays.fill(chars, 'x');
+    String content = new String(chars);
+    List<PendingMessage> messages = new ArrayList<>();
+    while (segments(directory).size() < 3) {
+      PendingMessage message = message(messages.size(), content);
+      outbox.append(message);
+      messages.add(message);
+    }
+
+    // acks of the later segments alone delete nothing, the first segment still has a live entry
+    for (PendingMessage message : messages.subList(1, messages.size())) {
+      outbox.ack(message.getOutboxIds());
+    }
+    assertEquals(3, segments(directory).size());
+
+    outbox.ack(messages.get(0).getOutboxIds());
+    assertEquals(1, segments(directory).size());
+    outbox.close();
+
+    List<PendingMessage> recovered = new ArrayList<>();
+    open(directory, recovered).close();
+    assertTrue(recovered.isEmpty());
+  }
+
+  @Test
+  public void restricts_files_to_owner() throws IOException {
+    File directory = new File(temporaryFolder.getRoot(), "outbox");
+    Assume.assumeTrue(temporaryFolder.getRoot().toPath().getFileSystem().supportedFileAttributeViews()
+        .contains("posix"));
+    Outbox outbox = open(directory, new ArrayList<>());
+    outbox.append(message(0, "content"));
+    outbox.close();
+
+    assertEquals("rwx------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())));
+    for (File segment : segments(directory)) {
+      assertEquals("rw-------",
+          PosixFilePermissions.toString(Files.getPosixFilePermissions(segment.toPath())));
+    }
+  }
+
+  @Test
+  public void channel_reference_is_stable_and_not_the_token() {
+    assertEquals(Outbox.channelReference(TOKEN), Outbox.channelReference(TOKEN));
+    assertFalse(Outbox.channelReference(TOKEN).contains(TOKEN));
+    assertFalse(Outbox.channelReference(TOKEN).equals(Outbox.channelReference(TOKEN + "2")));
+    assertNull(channelTokens.get(Outbox.channelReference("unknown")));
+  }
+}
@@ -0,0 +1,78 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.dadapush.client.JSON;
+import com.dadapush.client.model.MessagePushRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class PayloadTest {
+
+  private final JSON json = new JSON();
+  private final NotificationStats stats = new NotificationStats(new MetricCache(TestFixtures.i18n()));
+
+  private static Payload payload(int contentLength) {
+    char[] content = new char[contentLength];
+    Arrays.fill(content, 'x');
+    MessagePushRequest body = new MessagePushRequest();
+    body.setTitle("ERROR");
+    body.setContent(new String(content));
+    body.setNeedPush(true);
+    return new Payload(body);
+  }
+
+  private static byte[] gunzip(byte[] gzipped) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      byte[] buffer = new byte[4096];
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        bytes.write(buffer, 0, read);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void serializes_once() {
+    Payload payload = payload(10);
+    byte[] first = payload.getJson(json, stats);
+    assertSame(first, payload.getJson(json, stats));
+    assertSame(first, payload.getJson(json, stats));
+    assertEquals(2L, stats.getSerializationsSaved());
+  }
+
+  @Test
+  public void small_bodies_are_not_compressed() {
+    Payload payload = payload(10);
+    assertTrue(payload.getJson(json, stats).length < Payload.GZIP_MIN_BYTES);
+    assertNull(payload.getGzipped());
+  }
+
+  @Test
+  public void gzip_round_trips() throws IOException {
+    Payload payload = payload(4_000);
+    byte[] uncompressed = payload.getJson(json, stats);
+    byte[] gzipped = payload.getGzipped();
+
+    assertNotNull(gzipped);
+    assertTrue(gzipped.length < uncompressed.length);
+    assertSame(gzipped, payload.getGzipped());
+    assertArrayEquals(uncompressed, gunzip(gzipped));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void compressing_requires_serializing_first() {
+    payload(4_000).getGzipped();
+  }
+}
@@ -0,0 +1,117 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.dadapush.client.model.MessagePushRequest;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class PriorityMessageQueueTest {
+
+  private static final long AGING_MS = 1_000L;
+
+  private long now;
+  private final PriorityMessageQueue queue = new PriorityMessageQueue(4, AGING_MS, () -> now);
+
+  private static PendingMessage message(String name, Priority priority) {
+    MessagePushRequest body = new MessagePushRequest();
+    body.setTitle(name);
+    return new PendingMessage("com.example:" + name, "token", "http://localhost", body, name, priority);
+  }
+
+  private PendingMessage poll() throws InterruptedException {
+    return queue.poll(0L, TimeUnit.MILLISECONDS);
+  }
+
+  private void advanceMillis(long millis) {
+    now += TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  @Test
+  public void serves_higher_priorities_first_and_fifo_within_a_priority() throws InterruptedException {
+    PendingMessage low = message("low", Priority.LOW);
+    PendingMessage high1 = message("high1", Priority.HIGH);
+    PendingMessage normal = message("normal", Priority.NORMAL);
+    PendingMessage high2 = message("high2", Priority.HIGH);
+    assertTrue(queue.offer(low));
+    assertTrue(queue.offer(high1));
+    assertTrue(queue.offer(normal));
+    assertTrue(queue.offer(high2));
+
+    assertSame(high1, poll());
+    assertSame(high2, poll());
+    assertSame(normal, poll());
+    assertSame(low, poll());
+    assertNull(poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void waiting_notifications_gain_one_level_per_aging_interval() throws InterruptedException {
+    PendingMessage low = message("low", Priority.LOW);
+    queue.offer(low);
+    advanceMillis(AGING_MS);
+    PendingMessage normal = message("normal", Priority.NORMAL);
+    queue.offer(normal);
+    // tie between the aged LOW and a fresh NORMAL goes to the higher priority
+    assertSame(normal, poll());
+
+    advanceMillis(AGING_MS);
+    PendingMessage high = message("high", Priority.HIGH);
+    queue.offer(high);
+    // LOW waited two intervals, it ties with HIGH and loses
+    assertSame(high, poll());
+
+    advanceMillis(AGING_MS);
+    queue.offer(high);
+    // LOW waited three intervals, it beats a fresh HIGH
+    assertSame(low, poll());
+    assertSame(high, poll());
+  }
+
+  @Test
+  public void offer_fails_when_full() throws InterruptedException {
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(message("m" + i, Priority.LOW)));
+    }
+    assertFalse(queue.offer(message("m4", Priority.HIGH)));
+    assertFalse(queue.offer(message("m4", Priority.HIGH), 1L, TimeUnit.MILLISECONDS));
+    assertEquals(4, queue.size());
+  }
+
+  @Test
+  public void evicts_oldest_of_lowest_priority() {
+    PendingMessage normal = message("normal", Priority.NORMAL);
+    PendingMessage low1 = message("low1", Priority.LOW);
+    PendingMessage low2 = message("low2", Priority.LOW);
+    PendingMessage high = message("high", Priority.HIGH);
+    queue.offer(normal);
+    queue.offer(low1);
+    queue.offer(low2);
+    queue.offer(high);
+
+    assertSame(low1, queue.evict(Priority.HIGH));
+    assertSame(low2, queue.evict(Priority.HIGH));
+    assertSame(normal, queue.evict(Priority.NORMAL));
+    // nothing of at most NORMAL priority is left
+    assertNull(queue.evict(Priority.NORMAL));
+    assertSame(high, queue.evict(Priority.HIGH));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void eviction_makes_room() {
+    for (int i = 0; i < 4; i++) {
+      queue.offer(message("m" + i, Priority.LOW));
+    }
+    PendingMessage high = message("high", Priority.HIGH);
+    assertFalse(queue.offer(high));
+    queue.evict(high.getPriority());
+    assertTrue(queue.offer(high));
+    assertEquals(4, queue.size());
+  }
+}
@@ -0,0 +1,76 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ProjectConfigIndexTest {
+
+    private static ProjectConfigIndex index(ProjectConfig... configs) {
+        Map<String, ProjectConfig> map = new HashMap<>();
+        for (ProjectConfig config : configs) {
+            map.put(config.getProjectKey(), config);
+        }
+        return new ProjectConfigIndex(map);
+    }
+
+    private static ProjectConfig config(String projectKey) {
+        return new ProjectConfig(projectKey, "token-" + projectKey, false);
+    }
+
+    @Test
+    public void exact_key_wins_over_wildcards() {
+        ProjectConfig exact = config("com.example:app");
+        ProjectConfigIndex index = index(config("com.example:*"), config("*"), exact);
+
+        ProjectConfigIndex.Match match = index.find("com.example:app");
+        assertSame(exact, match.getConfig());
+        assertEquals(3, match.getCandidates());
+    }
+
+    @Test
+    public void longest_wildcard_wins() {
+        ProjectConfig longest = config("com.example:app*");
+        ProjectConfigIndex index = index(config("com.*"), longest, config("com.example:*"));
+
+        ProjectConfigIndex.Match match = index.find("com.example:app-web");
+        assertSame(longest, match.getConfig());
+        assertEquals(3, match.getCandidates());
+    }
+
+    @Test
+    public void wildcard_matches_its_prefix_itself() {
+        ProjectConfig wildcard = config("com.example:*");
+        ProjectConfigIndex index = index(wildcard);
+
+        assertSame(wildcard, index.find("com.example:").getConfig());
+        assertNull(index.find("com.example").getConfig());
+    }
+
+    @Test
+    public void no_match() {
+        ProjectConfigIndex index = index(config("com.example:app"), config("org.*"));
+
+        ProjectConfigIndex.Match match = index.find("com.example:app2");
+        assertNull(match.getConfig());
+        assertEquals(0, match.getCandidates());
+        assertNull(ProjectConfigIndex.EMPTY.find("com.example:app").getConfig());
+    }
+
+    @Test
+    public void siblings_inserted_in_any_order_are_found() {
+        // children are kept sorted, insert out of order to exercise every insertion position
+        ProjectConfig[] configs = {config("m*"), config("a*"), config("z*"), config("c*"), config("mb*"), config("ma*")};
+        ProjectConfigIndex index = index(configs);
+
+        for (ProjectConfig config : configs) {
+            String prefix = config.getProjectKey().substring(0, config.getProjectKey().length() - 1);
+            assertSame(config, index.find(prefix + "-project").getConfig());
+        }
+        assertNull(index.find("b-project").getConfig());
+    }
+}
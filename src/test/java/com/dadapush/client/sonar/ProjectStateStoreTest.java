@@ -0,0 +1,71 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.ce.posttask.QualityGate.EvaluationStatus;
+import org.sonar.api.ce.posttask.QualityGate.Operator;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.measures.CoreMetrics;
+
+public class ProjectStateStoreTest {
+
+  private static final String SUBJECT = "com.example:project";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final MetricCache metricCache = new MetricCache(TestFixtures.i18n());
+
+  private List<EvaluatedCondition> coverage(String value) {
+    return EvaluatedCondition.of(TestFixtures.qualityGate(QualityGate.Status.ERROR, TestFixtures.condition(
+        CoreMetrics.NEW_COVERAGE_KEY, EvaluationStatus.ERROR, Operator.LESS_THAN, value, null, "80")), metricCache);
+  }
+
+  @Test
+  public void keeps_branches_and_pull_requests_apart() {
+    ProjectStateStore store = new ProjectStateStore(TestFixtures.settings());
+    ProjectState main = ProjectState.of(coverage("50"));
+    ProjectState branch = ProjectState.of(coverage("60"));
+    store.put(SUBJECT, main);
+    store.put(SUBJECT + "|branch:feature", branch);
+
+    assertSame(main, store.get(SUBJECT));
+    assertSame(branch, store.get(SUBJECT + "|branch:feature"));
+    assertNull(store.get(SUBJECT + "|pr:42"));
+  }
+
+  @Test
+  public void reading_does_not_record() {
+    ProjectStateStore store = new ProjectStateStore(TestFixtures.settings());
+    assertNull(store.get(SUBJECT));
+    assertNull(store.get(SUBJECT));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void persisted_states_survive_a_restart() throws IOException {
+    MapSettings settings = TestFixtures.settings()
+        .setProperty(DaDaPushNotificationProp.DELTA_PERSIST.property(), true)
+        .setProperty("sonar.path.data", temporaryFolder.newFolder().getAbsolutePath());
+    ProjectStateStore store = new ProjectStateStore(settings);
+    store.put(SUBJECT, ProjectState.of(coverage("50")));
+    store.put(SUBJECT + "|pr:42", ProjectState.of(coverage("60")));
+    store.stop();
+
+    ProjectStateStore restarted = new ProjectStateStore(settings);
+    EvaluatedCondition sixty = coverage("60").get(0);
+    assertFalse(restarted.get(SUBJECT).isUnchanged(0, sixty));
+    assertTrue(restarted.get(SUBJECT + "|pr:42").isUnchanged(0, sixty));
+    assertEquals(2, restarted.size());
+  }
+}
@@ -0,0 +1,78 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.dadapush.client.ApiException;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+
+public class RetryPolicyTest {
+
+  private final RetryPolicy policy = new RetryPolicy(3, 100L, 1000L, Collections.singleton(7));
+
+  private static ApiException httpError(int status) {
+    return new ApiException(status, Collections.emptyMap(), "");
+  }
+
+  @Test
+  public void transport_errors_and_temporary_http_errors_are_retryable() {
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, policy.classify(new ApiException(new IOException("reset"))));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, policy.classify(httpError(408)));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, policy.classify(httpError(429)));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, policy.classify(httpError(500)));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, policy.classify(httpError(503)));
+  }
+
+  @Test
+  public void other_http_errors_are_permanent() {
+    assertEquals(DeliveryResult.PERMANENT_FAILURE, policy.classify(httpError(400)));
+    assertEquals(DeliveryResult.PERMANENT_FAILURE, policy.classify(httpError(401)));
+    assertEquals(DeliveryResult.PERMANENT_FAILURE, policy.classify(httpError(404)));
+  }
+
+  @Test
+  public void result_codes_are_permanent_unless_configured() {
+    assertEquals(DeliveryResult.DELIVERED, policy.classify(0));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, policy.classify(7));
+    assertEquals(DeliveryResult.PERMANENT_FAILURE, policy.classify(1));
+  }
+
+  @Test
+  public void retries_until_max_attempts() {
+    assertTrue(policy.canRetry(1));
+    assertTrue(policy.canRetry(2));
+    assertFalse(policy.canRetry(3));
+  }
+
+  @Test
+  public void backoff_grows_exponentially_with_jitter_up_to_the_maximum() {
+    for (int i = 0; i < 100; i++) {
+      assertBetween(50L, 100L, policy.backoffMs(1));
+      assertBetween(100L, 200L, policy.backoffMs(2));
+      assertBetween(200L, 400L, policy.backoffMs(3));
+      assertBetween(500L, 1000L, policy.backoffMs(10));
+      assertBetween(500L, 1000L, policy.backoffMs(100));
+    }
+  }
+
+  @Test
+  public void created_from_settings() {
+    MapSettings settings = TestFixtures.settings();
+    settings.setProperty(DaDaPushNotificationProp.RETRY_MAX_ATTEMPTS.property(), 2);
+    settings.setProperty(DaDaPushNotificationProp.RETRY_CODES.property(), "5, x,9");
+
+    RetryPolicy created = RetryPolicy.create(settings);
+    assertFalse(created.canRetry(2));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, created.classify(5));
+    assertEquals(DeliveryResult.RETRYABLE_FAILURE, created.classify(9));
+    assertEquals(DeliveryResult.PERMANENT_FAILURE, created.classify(1));
+  }
+
+  private static void assertBetween(long min, long max, long actual) {
+    assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+  }
+}
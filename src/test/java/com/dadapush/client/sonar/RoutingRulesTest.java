@@ -0,0 +1,140 @@
+package com.dadapush.client.sonar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.QualityGate;
+
+public class RoutingRulesTest {
+
+  private static final String PROJECT_KEY = "com.example:project";
+  private static final Supplier<Map<String, String>> NO_PROPERTIES = Collections::emptyMap;
+
+  private final List<RoutingRule> rules = new ArrayList<>();
+
+  /**
+   * Adds a rule with fields project, branch, branchType, status, scannerProperty and channelToken.
+   */
+  private RoutingRule rule(String... rawValues) {
+    RoutingRule rule = RoutingRule.fromRawValues(rules.size(), rawValues);
+    rules.add(rule);
+    return rule;
+  }
+
+  private RoutingRule find(String projectKey, BranchScope scope, String branchName, QualityGate.Status status) {
+    return new RoutingRules(rules).find(projectKey, scope, branchName, status, NO_PROPERTIES);
+  }
+
+  @Test
+  public void no_rules_match_nothing() {
+    assertTrue(RoutingRules.EMPTY.isEmpty());
+    assertNull(RoutingRules.EMPTY.find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK, NO_PROPERTIES));
+  }
+
+  @Test
+  public void first_matching_rule_wins() {
+    RoutingRule wildcard = rule("com.example:*", null, null, null, null, "wildcard");
+    rule(PROJECT_KEY, null, null, null, null, "exact");
+    RoutingRule any = rule(null, null, null, null, null, "any");
+
+    assertSame(wildcard, find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK));
+    assertSame(any, find("org.other:project", BranchScope.MAIN, null, QualityGate.Status.OK));
+  }
+
+  @Test
+  public void exact_project_key_does_not_match_other_projects() {
+    RoutingRule exact = rule(PROJECT_KEY, null, null, null, null, "exact");
+
+    assertSame(exact, find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK));
+    assertNull(find(PROJECT_KEY + "-api", BranchScope.MAIN, null, QualityGate.Status.OK));
+    assertNull(find("com.example", BranchScope.MAIN, null, QualityGate.Status.OK));
+  }
+
+  @Test
+  public void branch_scope_selects_analyses() {
+    RoutingRule pullRequests = rule(null, null, "PULL_REQUEST", null, null, "pr");
+    RoutingRule branches = rule(null, null, "branch", null, null, "branch");
+    RoutingRule main = rule(null, null, "MAIN", null, null, "main");
+
+    assertSame(pullRequests, find(PROJECT_KEY, BranchScope.PULL_REQUEST, "42", QualityGate.Status.OK));
+    assertSame(branches, find(PROJECT_KEY, BranchScope.BRANCH, "develop", QualityGate.Status.OK));
+    assertSame(main, find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK));
+  }
+
+  @Test
+  public void branch_name_glob() {
+    RoutingRule features = rule(null, "feature/*", null, null, null, "features");
+
+    assertSame(features, find(PROJECT_KEY, BranchScope.BRANCH, "feature/a", QualityGate.Status.OK));
+    assertNull(find(PROJECT_KEY, BranchScope.BRANCH, "bugfix/feature/a", QualityGate.Status.OK));
+    assertNull(find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK));
+  }
+
+  @Test
+  public void status_condition_includes_unknown_status_only_without_statuses() {
+    RoutingRule failures = rule(null, null, null, "warn, ERROR", null, "failures");
+    RoutingRule rest = rule(null, null, null, null, null, "rest");
+
+    assertSame(failures, find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.ERROR));
+    assertSame(rest, find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK));
+    assertSame(rest, find(PROJECT_KEY, BranchScope.MAIN, null, null));
+  }
+
+  @Test
+  public void scanner_properties_are_read_only_when_a_candidate_needs_them() {
+    RoutingRule release = rule(PROJECT_KEY, null, null, null, "release=1.*", "release");
+    RoutingRule flagged = rule(null, null, null, null, "nightly", "nightly");
+    RoutingRules routingRules = new RoutingRules(rules);
+    AtomicInteger reads = new AtomicInteger();
+
+    assertNull(routingRules.find("org.other:project", BranchScope.MAIN, null, QualityGate.Status.OK, () -> {
+      reads.incrementAndGet();
+      return Collections.emptyMap();
+    }));
+    assertEquals(1, reads.get());
+
+    assertSame(release, routingRules.find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK,
+        () -> Collections.singletonMap("release", "1.2")));
+    assertSame(flagged, routingRules.find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK,
+        () -> Collections.singletonMap("nightly", "")));
+    assertNull(routingRules.find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK,
+        () -> Collections.singletonMap("release", "2.0")));
+  }
+
+  @Test
+  public void rules_without_scanner_property_do_not_read_them() {
+    rule(null, null, null, null, null, "any");
+    assertFalse(new RoutingRules(rules).find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK, () -> {
+      throw new AssertionError("scanner properties read");
+    }).hasScannerPropertyCondition());
+  }
+
+  @Test
+  public void empty_channel_token_drops_the_notification() {
+    rule(null, null, null, null, null, "");
+    RoutingRule matched = find(PROJECT_KEY, BranchScope.MAIN, null, QualityGate.Status.OK);
+    assertTrue(matched.getChannels().isEmpty());
+  }
+
+  @Test
+  public void many_rules_keep_their_order() {
+    for (int i = 0; i < 200; i++) {
+      rule("com.example:project" + i, null, null, null, null, "token" + i);
+    }
+    RoutingRule last = rule("com.example:*", null, null, null, null, "wildcard");
+
+    assertEquals(130, find("com.example:project130", BranchScope.MAIN, null, QualityGate.Status.OK).getOrder());
+    assertSame(last, find("com.example:other", BranchScope.MAIN, null, QualityGate.Status.OK));
+    assertEquals(201, new RoutingRules(rules).size());
+  }
+}
@@ -0,0 +1,142 @@
+package com.dadapush.client.sonar;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import org.sonar.api.Plugin;
+import org.sonar.api.SonarQubeSide;
+import org.sonar.api.ce.posttask.Branch;
+import org.sonar.api.ce.posttask.CeTask;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask.ProjectAnalysis;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.i18n.I18n;
+import org.sonar.api.internal.SonarRuntimeImpl;
+import org.sonar.api.utils.Version;
+
+/**
+ * Settings and collaborators shared by the unit tests.
+ */
+final class TestFixtures {
+
+  private TestFixtures() {
+  }
+
+  /**
+   * @return settings with the defaults of all plugin properties
+   */
+  static MapSettings settings() {
+    return new MapSettings(definitions());
+  }
+
+  static PropertyDefinitions definitions() {
+    Plugin.Context context = new Plugin.Context(
+        SonarRuntimeImpl.forSonarQube(Version.create(7, 4), SonarQubeSide.COMPUTE_ENGINE));
+    new DaDaPushPlugin().define(context);
+    return new PropertyDefinitions(context.getExtensions());
+  }
+
+  /**
+   * Sets project configuration id of settings, and adds it to the configured ids.
+   */
+  static MapSettings projectConfig(MapSettings settings, String id, String projectKey, String channelToken) {
+    String prefix = DaDaPushNotificationProp.CONFIG.property() + "." + id + ".";
+    settings.setProperty(prefix + DaDaPushNotificationProp.PROJECT.property(), projectKey);
+    settings.setProperty(prefix + DaDaPushNotificationProp.CHANNEL_TOKEN.property(), channelToken);
+    String ids = settings.getString(DaDaPushNotificationProp.CONFIG.property());
+    settings.setProperty(DaDaPushNotificationProp.CONFIG.property(), ids == null ? id : ids + "," + id);
+    return settings;
+  }
+
+  /**
+   * @return a condition on metricKey, value null for {@link QualityGate.EvaluationStatus#NO_VALUE}
+   */
+  static QualityGate.Condition condition(String metricKey, QualityGate.EvaluationStatus status,
+      QualityGate.Operator operator, String value, String warningThreshold, String errorThreshold) {
+    PostProjectAnalysisTaskTester.ConditionBuilder builder = PostProjectAnalysisTaskTester.newConditionBuilder()
+        .setMetricKey(metricKey)
+        .setOperator(operator)
+        .setWarningThreshold(warningThreshold)
+        .setErrorThreshold(errorThreshold)
+        .setOnLeakPeriod(false);
+    return value == null ? builder.buildNoValue() : builder.build(status, value);
+  }
+
+  static QualityGate qualityGate(QualityGate.Status status, QualityGate.Condition... conditions) {
+    PostProjectAnalysisTaskTester.QualityGateBuilder builder = PostProjectAnalysisTaskTester.newQualityGateBuilder()
+        .setId("1")
+        .setName("Sonar way")
+        .setStatus(status);
+    for (QualityGate.Condition condition : conditions) {
+      builder.add(condition);
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return an analysis of the main branch of projectKey, named "Project projectKey"
+   */
+  static ProjectAnalysis analysis(String projectKey, QualityGate qualityGate) {
+    return analysis(projectKey, qualityGate, null);
+  }
+
+  /**
+   * @param branch null for a project without branch support
+   */
+  static ProjectAnalysis analysis(String projectKey, QualityGate qualityGate, Branch branch) {
+    ProjectAnalysis[] result = new ProjectAnalysis[1];
+    analyze(analysis -> result[0] = analysis, projectKey, qualityGate, branch, Collections.emptyMap());
+    return result[0];
+  }
+
+  /**
+   * Runs task with an analysis of projectKey, named "Project projectKey".
+   *
+   * @param branch null for a project without branch support
+   */
+  static void analyze(PostProjectAnalysisTask task, String projectKey, QualityGate qualityGate, Branch branch,
+      Map<String, String> scannerProperties) {
+    PostProjectAnalysisTaskTester tester = PostProjectAnalysisTaskTester.of(task)
+        .withCeTask(PostProjectAnalysisTaskTester.newCeTaskBuilder()
+            .setId("task-" + projectKey)
+            .setStatus(CeTask.Status.SUCCESS)
+            .build())
+        .withProject(PostProjectAnalysisTaskTester.newProjectBuilder()
+            .setUuid("uuid-" + projectKey)
+            .setKey(projectKey)
+            .setName("Project " + projectKey)
+            .build())
+        .withQualityGate(qualityGate)
+        .withScannerContext(PostProjectAnalysisTaskTester.newScannerContextBuilder()
+            .addProperties(scannerProperties)
+            .build())
+        .at(new Date());
+    if (branch != null) {
+      tester.withBranch(branch);
+    }
+    tester.execute();
+  }
+
+  /**
+   * @return a branch other than the main one
+   */
+  static Branch branch(String name, Branch.Type type) {
+    return PostProjectAnalysisTaskTester.newBranchBuilder()
+        .setName(name)
+        .setType(type)
+        .setIsMain(false)
+        .build();
+  }
+
+  /**
+   * @return an I18n which returns the default value of every message
+   */
+  static I18n i18n() {
+    return (I18n) Proxy.newProxyInstance(TestFixtures.class.getClassLoader(), new Class<?>[] {I18n.class},
+        (proxy, method, args) -> "message".equals(method.getName()) ? args[2] : null);
+  }
+}